@@ -2,12 +2,15 @@ package org.inesctec.flexcomm.energy.api;
 
 import static org.onosproject.net.DefaultAnnotations.EMPTY;
 
+import java.nio.DoubleBuffer;
 import java.time.Instant;
 import java.util.List;
 
 import org.onosproject.net.Annotated;
 import org.onosproject.net.Annotations;
 
+import com.google.common.primitives.Doubles;
+
 public interface Energy extends Annotated {
 
   String emsId();
@@ -18,6 +21,26 @@ public interface Energy extends Annotated {
 
   List<Double> estimateArray();
 
+  default int slotCount() {
+    return Math.min(flexibilityArray().size(), estimateArray().size());
+  }
+
+  default double flexibilityAt(int slot) {
+    return flexibilityArray().get(slot);
+  }
+
+  default double estimateAt(int slot) {
+    return estimateArray().get(slot);
+  }
+
+  default DoubleBuffer flexibilityBuffer() {
+    return DoubleBuffer.wrap(Doubles.toArray(flexibilityArray())).asReadOnlyBuffer();
+  }
+
+  default DoubleBuffer estimateBuffer() {
+    return DoubleBuffer.wrap(Doubles.toArray(estimateArray())).asReadOnlyBuffer();
+  }
+
   @Override
   default Annotations annotations() {
     return EMPTY;
@@ -30,8 +53,12 @@ public interface Energy extends Annotated {
 
     Builder setFlexibilityArray(List<Double> flexibilityArray);
 
+    Builder setFlexibilityArray(double[] flexibilityArray);
+
     Builder setEstimateArray(List<Double> estimateArray);
 
+    Builder setEstimateArray(double[] estimateArray);
+
     Builder setAnnotations(Annotations anns);
 
     Energy build();
@@ -0,0 +1,21 @@
+package org.inesctec.flexcomm.energy.api;
+
+public interface EnergyAggregate {
+
+  int slotCount();
+
+  int count(int slot);
+
+  double flexibilitySum(int slot);
+
+  double flexibilityMin(int slot);
+
+  double flexibilityMax(int slot);
+
+  double estimateSum(int slot);
+
+  double estimateMin(int slot);
+
+  double estimateMax(int slot);
+
+}
@@ -0,0 +1,47 @@
+package org.inesctec.flexcomm.energy.api;
+
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
+
+import com.codahale.metrics.SlidingWindowReservoir;
+import com.codahale.metrics.Timer;
+
+/**
+ * Metrics shared by the energy components.
+ * <p>
+ * Timers created here sample into a fixed array, unlike the default
+ * decaying reservoir, so recording a duration allocates nothing. Meters and
+ * counters never allocate on update.
+ */
+public final class EnergyMetrics {
+
+  /**
+   * Metrics component of every energy metric.
+   */
+  public static final String COMPONENT = "FlexcommEnergy";
+
+  private static final int RESERVOIR_SIZE = 1028;
+
+  private EnergyMetrics() {
+  }
+
+  /**
+   * Registers a timer, or returns the one already registered under the name.
+   *
+   * @param metricsService metrics service
+   * @param component      metrics component
+   * @param feature        metrics feature
+   * @param name           metric name
+   * @return timer
+   */
+  public static Timer timer(MetricsService metricsService, MetricsComponent component, MetricsFeature feature,
+      String name) {
+    try {
+      return metricsService.registerMetric(component, feature, name,
+          new Timer(new SlidingWindowReservoir(RESERVOIR_SIZE)));
+    } catch (IllegalArgumentException e) {
+      return metricsService.createTimer(component, feature, name);
+    }
+  }
+}
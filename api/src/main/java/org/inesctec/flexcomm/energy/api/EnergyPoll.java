@@ -0,0 +1,46 @@
+package org.inesctec.flexcomm.energy.api;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Instant;
+
+import com.google.common.base.MoreObjects;
+
+public final class EnergyPoll {
+
+  private final String emsId;
+  private final Instant nextPoll;
+  private final Instant lastPoll;
+
+  public EnergyPoll(String emsId, Instant nextPoll, Instant lastPoll) {
+    this.emsId = checkNotNull(emsId);
+    this.nextPoll = checkNotNull(nextPoll);
+    this.lastPoll = lastPoll;
+  }
+
+  public String emsId() {
+    return emsId;
+  }
+
+  public Instant nextPoll() {
+    return nextPoll;
+  }
+
+  /**
+   * Returns when the EMS was last polled by the schedule.
+   *
+   * @return last poll, or null if it was not polled yet
+   */
+  public Instant lastPoll() {
+    return lastPoll;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("emsId", emsId)
+        .add("nextPoll", nextPoll)
+        .add("lastPoll", lastPoll)
+        .toString();
+  }
+}
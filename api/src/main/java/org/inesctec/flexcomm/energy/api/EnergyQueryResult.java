@@ -0,0 +1,40 @@
+package org.inesctec.flexcomm.energy.api;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public final class EnergyQueryResult {
+
+  private final List<Energy> energy;
+  private final Set<String> failedEmsIds;
+
+  public EnergyQueryResult(Collection<Energy> energy, Collection<String> failedEmsIds) {
+    this.energy = ImmutableList.copyOf(energy);
+    this.failedEmsIds = ImmutableSet.copyOf(failedEmsIds);
+  }
+
+  public List<Energy> energy() {
+    return energy;
+  }
+
+  public Set<String> failedEmsIds() {
+    return failedEmsIds;
+  }
+
+  public boolean isComplete() {
+    return failedEmsIds.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("energy", energy.size())
+        .add("failedEmsIds", failedEmsIds)
+        .toString();
+  }
+}
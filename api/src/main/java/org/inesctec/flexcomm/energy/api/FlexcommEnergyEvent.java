@@ -1,19 +1,44 @@
 package org.inesctec.flexcomm.energy.api;
 
+import java.util.Set;
+
 import org.onosproject.event.AbstractEvent;
 
+import com.google.common.collect.ImmutableSet;
+
 public class FlexcommEnergyEvent extends AbstractEvent<FlexcommEnergyEvent.Type, Energy> {
 
   public enum Type {
     ENERGY_UPDATED,
     ENERGY_REMOVED,
+    ENERGY_PERIOD_CHANGED,
+    /**
+     * Energy of several EMS was updated at once, e.g. by a poll cycle. The
+     * event has no subject, the affected EMS are listed by emsIds(). It is
+     * followed by an ENERGY_PERIOD_CHANGED event for each of them whose
+     * current period changed.
+     */
+    ENERGY_BATCH_UPDATED,
   }
 
+  private final Set<String> emsIds;
+
   public FlexcommEnergyEvent(Type type, Energy subject) {
     super(type, subject);
+    this.emsIds = subject != null ? ImmutableSet.of(subject.emsId()) : ImmutableSet.of();
   }
 
   public FlexcommEnergyEvent(Type type, Energy subject, long time) {
     super(type, subject, time);
+    this.emsIds = subject != null ? ImmutableSet.of(subject.emsId()) : ImmutableSet.of();
+  }
+
+  public FlexcommEnergyEvent(Type type, Set<String> emsIds) {
+    super(type, null);
+    this.emsIds = ImmutableSet.copyOf(emsIds);
+  }
+
+  public Set<String> emsIds() {
+    return emsIds;
   }
 }
@@ -0,0 +1,22 @@
+package org.inesctec.flexcomm.energy.api;
+
+import java.util.List;
+
+public interface FlexcommEnergyPollingService {
+
+  /**
+   * Returns the daily poll of every known EMS, ordered by next poll.
+   *
+   * @return poll schedule
+   */
+  List<EnergyPoll> getPollSchedule();
+
+  /**
+   * Returns whether the EMS of the devices known at startup were fetched, or
+   * the startup warm-up timed out.
+   *
+   * @return true once warm-up is over
+   */
+  boolean isReady();
+
+}
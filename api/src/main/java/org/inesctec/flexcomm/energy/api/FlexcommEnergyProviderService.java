@@ -1,10 +1,14 @@
 package org.inesctec.flexcomm.energy.api;
 
+import java.util.Map;
+
 import org.onosproject.net.provider.ProviderService;
 
 public interface FlexcommEnergyProviderService extends ProviderService<FlexcommEnergyProvider> {
 
   void updateEnergy(String emsId, Energy energy);
 
+  void updateEnergy(Map<String, Energy> energies);
+
   void removeEnergy(String emsId);
 }
@@ -2,6 +2,8 @@ package org.inesctec.flexcomm.energy.api;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.onosproject.event.ListenerService;
 import org.onosproject.net.DeviceId;
@@ -14,16 +16,28 @@ public interface FlexcommEnergyService extends ListenerService<FlexcommEnergyEve
 
   public Energy getEnergy(DeviceId deviceId);
 
+  public Map<DeviceId, Energy> getEnergies(Set<DeviceId> deviceIds);
+
   public List<Energy> getEnergy(Instant timestamp);
 
+  public EnergyQueryResult queryEnergy(Instant timestamp);
+
   public Energy getEnergy(String emsId, Instant timestamp);
 
   public Energy getEnergy(DeviceId deviceId, Instant timestamp);
 
+  public List<EnergyPeriod> getEnergyPeriods(String emsId, Instant from, Instant to);
+
   public List<EnergyPeriod> getCurrentEnergyPeriod();
 
   public EnergyPeriod getCurrentEnergyPeriod(String emsId);
 
   public EnergyPeriod getCurrentEnergyPeriod(DeviceId deviceID);
 
+  public Map<DeviceId, EnergyPeriod> getCurrentEnergyPeriods(Set<DeviceId> deviceIds);
+
+  public EnergyAggregate getEnergyAggregate();
+
+  public EnergyAggregate getEnergyAggregate(Set<String> emsIds);
+
 }
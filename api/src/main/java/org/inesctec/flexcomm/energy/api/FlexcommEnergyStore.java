@@ -1,12 +1,29 @@
 package org.inesctec.flexcomm.energy.api;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 import org.onosproject.store.Store;
 
 public interface FlexcommEnergyStore extends Store<FlexcommEnergyEvent, FlexcommEnergyStoreDelegate> {
 
-  FlexcommEnergyEvent updateEnergy(String emsId, Energy energy);
+  /**
+   * Stores the energy of an EMS. Events are sent to the store delegate once
+   * the update is applied.
+   *
+   * @param emsId EMS identifier
+   * @param energy energy data
+   */
+  void updateEnergy(String emsId, Energy energy);
+
+  /**
+   * Stores the energy of several EMS at once. Events are sent to the store
+   * delegate once the updates are applied.
+   *
+   * @param energies energy data by EMS identifier
+   */
+  void updateEnergy(Map<String, Energy> energies);
 
   FlexcommEnergyEvent removeEnergy(String emsId);
 
@@ -14,4 +31,10 @@ public interface FlexcommEnergyStore extends Store<FlexcommEnergyEvent, Flexcomm
 
   Energy getEnergy(String emsId);
 
+  Energy getEnergy(String emsId, Instant timestamp);
+
+  List<Energy> getEnergyHistory(String emsId, Instant from, Instant to);
+
+  EnergyAggregate getEnergyAggregate();
+
 }
@@ -0,0 +1,152 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.nio.DoubleBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.function.LongConsumer;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+import org.onosproject.net.Annotations;
+import org.onosproject.net.DefaultAnnotations;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Kryo serializer for {@link DefaultEnergy}.
+ * <p>
+ * The timestamp is written as epoch day plus second and nano of day, all as
+ * varints, so midnight aligned timestamps take a couple of bytes. Each series
+ * is written as a varint header holding its length and precision, followed by
+ * the packed values. The size of every written energy can be reported to a
+ * listener.
+ */
+public final class DefaultEnergySerializer extends Serializer<DefaultEnergy> {
+
+  private static final int SECONDS_PER_DAY = 86400;
+
+  private static final LongConsumer NO_LISTENER = size -> {
+  };
+
+  private final boolean singlePrecision;
+
+  private final LongConsumer sizeListener;
+
+  /**
+   * Creates a serializer writing the series as 64-bit doubles.
+   */
+  public DefaultEnergySerializer() {
+    this(false);
+  }
+
+  /**
+   * Creates a serializer.
+   *
+   * @param singlePrecision write the series as 32-bit floats, halving their
+   *                        size at the cost of precision
+   */
+  public DefaultEnergySerializer(boolean singlePrecision) {
+    this(singlePrecision, NO_LISTENER);
+  }
+
+  /**
+   * Creates a serializer reporting the size of what it writes.
+   *
+   * @param singlePrecision write the series as 32-bit floats
+   * @param sizeListener    receives the bytes written for each energy
+   */
+  public DefaultEnergySerializer(boolean singlePrecision, LongConsumer sizeListener) {
+    super(false, true);
+    this.singlePrecision = singlePrecision;
+    this.sizeListener = sizeListener;
+  }
+
+  @Override
+  public void write(Kryo kryo, Output output, DefaultEnergy energy) {
+    long start = output.total();
+    output.writeString(energy.emsId());
+
+    Instant timestamp = energy.timestamp();
+    long epochSecond = timestamp.getEpochSecond();
+    output.writeVarLong(Math.floorDiv(epochSecond, SECONDS_PER_DAY), false);
+    output.writeVarInt((int) Math.floorMod(epochSecond, SECONDS_PER_DAY), true);
+    output.writeVarInt(timestamp.getNano(), true);
+
+    writeSeries(output, energy.flexibilityBuffer());
+    writeSeries(output, energy.estimateBuffer());
+
+    Annotations annotations = energy.annotations();
+    if (annotations == null || annotations.keys().isEmpty()) {
+      output.writeVarInt(0, true);
+    } else {
+      output.writeVarInt(annotations.keys().size(), true);
+      for (String key : annotations.keys()) {
+        output.writeString(key);
+        output.writeString(annotations.value(key));
+      }
+    }
+
+    sizeListener.accept(output.total() - start);
+  }
+
+  @Override
+  public DefaultEnergy read(Kryo kryo, Input input, Class<DefaultEnergy> type) {
+    String emsId = input.readString();
+
+    long epochDay = input.readVarLong(false);
+    int secondOfDay = input.readVarInt(true);
+    int nanos = input.readVarInt(true);
+    Instant timestamp = LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneOffset.UTC).toInstant()
+        .plusSeconds(secondOfDay).plusNanos(nanos);
+
+    double[] flexibility = readSeries(input);
+    double[] estimate = readSeries(input);
+
+    Energy.Builder builder = DefaultEnergy.builder()
+        .setEmsId(emsId)
+        .setTimestamp(timestamp)
+        .setFlexibilityArray(flexibility)
+        .setEstimateArray(estimate);
+
+    int annotationCount = input.readVarInt(true);
+    if (annotationCount > 0) {
+      DefaultAnnotations.Builder annotations = DefaultAnnotations.builder();
+      for (int i = 0; i < annotationCount; ++i) {
+        annotations.set(input.readString(), input.readString());
+      }
+      builder.setAnnotations(annotations.build());
+    }
+
+    return (DefaultEnergy) builder.build();
+  }
+
+  private void writeSeries(Output output, DoubleBuffer values) {
+    int length = values.remaining();
+    output.writeVarInt(length << 1 | (singlePrecision ? 1 : 0), true);
+    for (int i = 0; i < length; ++i) {
+      if (singlePrecision) {
+        output.writeFloat((float) values.get());
+      } else {
+        output.writeDouble(values.get());
+      }
+    }
+  }
+
+  private static double[] readSeries(Input input) {
+    int header = input.readVarInt(true);
+    int length = header >>> 1;
+    if ((header & 1) == 0) {
+      return input.readDoubles(length);
+    }
+
+    double[] values = new double[length];
+    for (int i = 0; i < length; ++i) {
+      values[i] = input.readFloat();
+    }
+    return values;
+  }
+}
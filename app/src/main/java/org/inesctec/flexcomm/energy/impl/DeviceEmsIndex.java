@@ -0,0 +1,114 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.onosproject.net.DeviceId;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Bidirectional index between devices and the EMS they are annotated with.
+ * <p>
+ * Each EMS keeps the set of devices referencing it, so finding out whether
+ * an EMS is still in use, or which distinct EMS exist, needs no scan over
+ * the devices. Reads are lock free, updates are serialized.
+ */
+final class DeviceEmsIndex {
+
+  private final ConcurrentMap<DeviceId, String> deviceToEms = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Set<DeviceId>> emsToDevices = new ConcurrentHashMap<>();
+  private final Set<String> emsIds = Collections.unmodifiableSet(emsToDevices.keySet());
+
+  /**
+   * Outcome of binding a device to an EMS.
+   */
+  static final class Change {
+    private final String added;
+    private final String released;
+
+    private Change(String added, String released) {
+      this.added = added;
+      this.released = released;
+    }
+
+    /**
+     * Returns the EMS that gained its first device, if any.
+     *
+     * @return emsId or null
+     */
+    String added() {
+      return added;
+    }
+
+    /**
+     * Returns the EMS that lost its last device, if any.
+     *
+     * @return emsId or null
+     */
+    String released() {
+      return released;
+    }
+  }
+
+  synchronized Change put(DeviceId deviceId, String emsId) {
+    String previous = deviceToEms.put(deviceId, emsId);
+    if (emsId.equals(previous)) {
+      return new Change(null, null);
+    }
+
+    String released = previous != null ? unbind(deviceId, previous) : null;
+    Set<DeviceId> devices = emsToDevices.computeIfAbsent(emsId, k -> ConcurrentHashMap.newKeySet());
+    String added = devices.isEmpty() ? emsId : null;
+    devices.add(deviceId);
+    return new Change(added, released);
+  }
+
+  /**
+   * Removes a device from the index.
+   *
+   * @param deviceId device identifier
+   * @return the EMS that lost its last device, or null
+   */
+  synchronized String remove(DeviceId deviceId) {
+    String emsId = deviceToEms.remove(deviceId);
+    return emsId != null ? unbind(deviceId, emsId) : null;
+  }
+
+  private String unbind(DeviceId deviceId, String emsId) {
+    Set<DeviceId> devices = emsToDevices.get(emsId);
+    if (devices == null) {
+      return null;
+    }
+    devices.remove(deviceId);
+    if (devices.isEmpty()) {
+      emsToDevices.remove(emsId);
+      return emsId;
+    }
+    return null;
+  }
+
+  String emsId(DeviceId deviceId) {
+    return deviceToEms.get(deviceId);
+  }
+
+  boolean contains(String emsId) {
+    return emsToDevices.containsKey(emsId);
+  }
+
+  Set<String> emsIds() {
+    return emsIds;
+  }
+
+  Set<DeviceId> devices(String emsId) {
+    Set<DeviceId> devices = emsToDevices.get(emsId);
+    return devices != null ? ImmutableSet.copyOf(devices) : ImmutableSet.of();
+  }
+
+  synchronized void clear() {
+    deviceToEms.clear();
+    emsToDevices.clear();
+  }
+}
@@ -1,72 +1,379 @@
 package org.inesctec.flexcomm.energy.impl;
 
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.inesctec.flexcomm.energy.api.FlexcommEnergyEvent.Type.ENERGY_BATCH_UPDATED;
 import static org.inesctec.flexcomm.energy.api.FlexcommEnergyEvent.Type.ENERGY_REMOVED;
 import static org.inesctec.flexcomm.energy.api.FlexcommEnergyEvent.Type.ENERGY_UPDATED;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HISTORY_RETENTION_DAYS;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HISTORY_RETENTION_DAYS_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.SNAPSHOT_INTERVAL;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.SNAPSHOT_INTERVAL_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.SNAPSHOT_PATH;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.SNAPSHOT_PATH_DEFAULT;
+import static org.onlab.util.Tools.get;
+import static org.onlab.util.Tools.groupedThreads;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Timer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyAggregate;
+import org.inesctec.flexcomm.energy.api.EnergyMetrics;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyEvent;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyStore;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyStoreDelegate;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
+import org.onlab.util.AbstractAccumulator;
 import org.onlab.util.KryoNamespace;
+import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.store.AbstractStore;
+import org.onosproject.store.Timestamp;
 import org.onosproject.store.serializers.KryoNamespaces;
 import org.onosproject.store.service.EventuallyConsistentMap;
 import org.onosproject.store.service.EventuallyConsistentMapEvent;
 import org.onosproject.store.service.EventuallyConsistentMapListener;
 import org.onosproject.store.service.StorageService;
 import org.onosproject.store.service.WallClockTimestamp;
+import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.slf4j.Logger;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 
-@Component(immediate = true, service = FlexcommEnergyStore.class)
+@Component(immediate = true, service = FlexcommEnergyStore.class, property = {
+    HISTORY_RETENTION_DAYS + ":Integer=" + HISTORY_RETENTION_DAYS_DEFAULT,
+    SNAPSHOT_PATH + "=" + SNAPSHOT_PATH_DEFAULT,
+    SNAPSHOT_INTERVAL + ":Long=" + SNAPSHOT_INTERVAL_DEFAULT,
+})
 public class DistributedFlexcommEnergyStore extends AbstractStore<FlexcommEnergyEvent, FlexcommEnergyStoreDelegate>
     implements FlexcommEnergyStore {
 
+  private static final int EVENT_BATCH_MAX_ITEMS = 10000;
+  private static final int EVENT_BATCH_MAX_MILLIS = 1000;
+  private static final int EVENT_BATCH_IDLE_MILLIS = 50;
+
+  private static final String METRICS_FEATURE_STORE = "Store";
+  private static final String METRIC_PUTS = "puts";
+  private static final String METRIC_REMOVES = "removes";
+  private static final String METRIC_SERIALIZED_BYTES = "serializedBytes";
+  private static final String METRIC_SIZE = "size";
+  private static final String METRIC_SUPPRESSED_UPDATES = "suppressedUpdates";
+
   private final Logger log = getLogger(getClass());
 
   @Reference(cardinality = ReferenceCardinality.MANDATORY)
   protected StorageService storageService;
 
+  @Reference(cardinality = ReferenceCardinality.MANDATORY)
+  protected ComponentConfigService cfgService;
+
+  @Reference(cardinality = ReferenceCardinality.MANDATORY)
+  protected MetricsService metricsService;
+
   private EventuallyConsistentMap<String, Energy> energyData;
   private EventuallyConsistentMapListener<String, Energy> energyDataListener = new InternalEnergyListerner();
 
-  protected static final KryoNamespace.Builder SERIALIZER_BUILDER = KryoNamespace.newBuilder()
-      .register(KryoNamespaces.API)
-      .register(Energy.class);
+  private EventuallyConsistentMap<EnergyDayKey, Energy> energyHistory;
+
+  private final EnergyAggregator energyAggregator = new EnergyAggregator();
+
+  private final AtomicLong suppressedUpdates = new AtomicLong();
+
+  // Bumped on every change, so unchanged content is not snapshotted again
+  private final AtomicLong energyVersion = new AtomicLong();
+  private long snapshotVersion;
+
+  // Values being restored from the snapshot, timestamped with its save time
+  private final Map<Energy, Timestamp> restoredTimestamps = Collections.synchronizedMap(new IdentityHashMap<>());
+
+  private ScheduledExecutorService historyExecutor;
+
+  private ScheduledFuture<?> snapshotTask;
+
+  private Timer eventTimer;
+
+  private EnergyUpdateAccumulator energyUpdates;
+
+  private MetricsComponent metricsComponent;
+
+  private MetricsFeature storeFeature;
+
+  private Meter puts;
+
+  private Meter removes;
+
+  private Meter serializedBytes;
+
+  private int historyRetentionDays = HISTORY_RETENTION_DAYS_DEFAULT;
+
+  private String energySnapshotPath = SNAPSHOT_PATH_DEFAULT;
+
+  private long energySnapshotInterval = SNAPSHOT_INTERVAL_DEFAULT;
+
+  protected static final KryoNamespace.Builder SERIALIZER_BUILDER = serializerBuilder(new DefaultEnergySerializer());
+
+  // Registration order sets the ids on the wire, it has to be the same on every node
+  private static KryoNamespace.Builder serializerBuilder(DefaultEnergySerializer energySerializer) {
+    return KryoNamespace.newBuilder()
+        .register(KryoNamespaces.API)
+        .register(Energy.class)
+        .register(energySerializer, DefaultEnergy.class)
+        .register(EnergyDayKey.class);
+  }
 
   @Activate
-  public void activate() {
+  public void activate(ComponentContext context) {
+    cfgService.registerProperties(getClass());
+    modified(context);
+
+    eventTimer = new Timer("onos-flexcomm-energy-events", true);
+    energyUpdates = new EnergyUpdateAccumulator(eventTimer);
+
+    registerMetrics();
+    KryoNamespace.Builder serializer = serializerBuilder(new DefaultEnergySerializer(false, serializedBytes::mark));
+
     energyData = storageService.<String, Energy>eventuallyConsistentMapBuilder()
         .withName("onos-flexcomm-energy")
-        .withSerializer(SERIALIZER_BUILDER)
-        .withTimestampProvider((k, v) -> new WallClockTimestamp())
+        .withSerializer(serializer)
+        .withTimestampProvider((k, v) -> timestamp(v))
         .build();
     energyData.addListener(energyDataListener);
+    energyData.values().forEach(energyAggregator::update);
+
+    energyHistory = storageService.<EnergyDayKey, Energy>eventuallyConsistentMapBuilder()
+        .withName("onos-flexcomm-energy-history")
+        .withSerializer(serializer)
+        .withTimestampProvider((k, v) -> timestamp(v))
+        .build();
+
+    loadSnapshot();
+
+    historyExecutor = newSingleThreadScheduledExecutor(
+        groupedThreads("inesctec/flexcomm/energy", "energy-history", log));
+    historyExecutor.scheduleWithFixedDelay(this::purgeHistory, 1, 1, TimeUnit.HOURS);
+    scheduleSnapshots();
 
     log.info("Started");
   }
 
   @Deactivate
   public void deactivate() {
+    cfgService.unregisterProperties(getClass(), false);
+
+    historyExecutor.shutdownNow();
+    historyExecutor = null;
+    snapshotTask = null;
+    writeSnapshot();
+
     energyData.removeListener(energyDataListener);
+    eventTimer.cancel();
+    eventTimer = null;
     energyData.destroy();
+    energyHistory.destroy();
+    energyAggregator.clear();
+    removeMetrics();
     log.info("Stopped");
   }
 
+  @Modified
+  public void modified(ComponentContext context) {
+    Dictionary<?, ?> properties = context != null ? context.getProperties() : new Properties();
+
+    try {
+      String s = get(properties, HISTORY_RETENTION_DAYS);
+      if (!isNullOrEmpty(s)) {
+        historyRetentionDays = Math.max(1, Integer.parseInt(s.trim()));
+      }
+    } catch (NumberFormatException | ClassCastException e) {
+      // do nothing
+    }
+
+    try {
+      String s = get(properties, SNAPSHOT_PATH);
+      if (s != null) {
+        energySnapshotPath = s.trim();
+      }
+    } catch (ClassCastException e) {
+      // do nothing
+    }
+
+    try {
+      String s = get(properties, SNAPSHOT_INTERVAL);
+      if (!isNullOrEmpty(s)) {
+        long interval = Long.parseLong(s.trim());
+        if (interval != energySnapshotInterval) {
+          energySnapshotInterval = interval;
+          if (historyExecutor != null) {
+            scheduleSnapshots();
+          }
+        }
+      }
+    } catch (NumberFormatException | ClassCastException e) {
+      // do nothing
+    }
+
+    log.info("Settings: historyRetentionDays={}, snapshotPath={}, snapshotInterval={}",
+        historyRetentionDays, energySnapshotPath, energySnapshotInterval);
+  }
+
+  private void registerMetrics() {
+    metricsComponent = metricsService.registerComponent(EnergyMetrics.COMPONENT);
+    storeFeature = metricsComponent.registerFeature(METRICS_FEATURE_STORE);
+    puts = metricsService.createMeter(metricsComponent, storeFeature, METRIC_PUTS);
+    removes = metricsService.createMeter(metricsComponent, storeFeature, METRIC_REMOVES);
+    serializedBytes = metricsService.createMeter(metricsComponent, storeFeature, METRIC_SERIALIZED_BYTES);
+    metricsService.registerMetric(metricsComponent, storeFeature, METRIC_SIZE,
+        (Gauge<Integer>) () -> energyData != null ? energyData.size() : 0);
+    metricsService.registerMetric(metricsComponent, storeFeature, METRIC_SUPPRESSED_UPDATES,
+        (Gauge<Long>) this::suppressedUpdateCount);
+  }
+
+  private void removeMetrics() {
+    metricsService.removeMetric(metricsComponent, storeFeature, METRIC_PUTS);
+    metricsService.removeMetric(metricsComponent, storeFeature, METRIC_REMOVES);
+    metricsService.removeMetric(metricsComponent, storeFeature, METRIC_SERIALIZED_BYTES);
+    metricsService.removeMetric(metricsComponent, storeFeature, METRIC_SIZE);
+    metricsService.removeMetric(metricsComponent, storeFeature, METRIC_SUPPRESSED_UPDATES);
+  }
+
+  private void scheduleSnapshots() {
+    if (snapshotTask != null) {
+      snapshotTask.cancel(false);
+      snapshotTask = null;
+    }
+    if (energySnapshotInterval > 0) {
+      snapshotTask = historyExecutor.scheduleWithFixedDelay(this::writeSnapshot, energySnapshotInterval,
+          energySnapshotInterval, TimeUnit.SECONDS);
+    }
+  }
+
+  private Path snapshotPath() {
+    return energySnapshotPath.isEmpty() ? null : Paths.get(energySnapshotPath);
+  }
+
+  private Timestamp timestamp(Energy energy) {
+    Timestamp timestamp = restoredTimestamps.get(energy);
+    return timestamp != null ? timestamp : new WallClockTimestamp();
+  }
+
+  // Restored values keep the time the snapshot was saved, so whenever a peer
+  // holds a newer value for an EMS, now or once anti-entropy reaches this
+  // node, last-writer-wins keeps the peer value
+  private void loadSnapshot() {
+    Path path = snapshotPath();
+    if (path == null) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    EnergySnapshotFile.Snapshot snapshot;
+    try {
+      snapshot = EnergySnapshotFile.read(path);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Ignoring energy snapshot {}: {}", path, e.getMessage());
+      return;
+    }
+
+    Timestamp savedAt = new WallClockTimestamp(snapshot.savedAt());
+    Map<String, Energy> missing = Maps.newHashMap();
+    snapshot.energies().forEach(energy -> {
+      if (!energyData.containsKey(energy.emsId())) {
+        missing.put(energy.emsId(), energy);
+        restoredTimestamps.put(energy, savedAt);
+      }
+    });
+    try {
+      updateEnergy(missing);
+    } finally {
+      restoredTimestamps.clear();
+    }
+    log.info("Loaded {} of {} EMS from energy snapshot {} in {} ms", missing.size(), snapshot.energies().size(),
+        path, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  private synchronized void writeSnapshot() {
+    Path path = snapshotPath();
+    long version = energyVersion.get();
+    if (path == null || version == snapshotVersion) {
+      return;
+    }
+
+    try {
+      int count = EnergySnapshotFile.write(path, ImmutableList.copyOf(energyData.values()));
+      snapshotVersion = version;
+      log.debug("Wrote {} EMS to energy snapshot {}", count, path);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to write energy snapshot {}", path, e);
+    }
+  }
+
   @Override
-  public FlexcommEnergyEvent updateEnergy(String emsId, Energy energy) {
-    energyData.put(emsId, energy);
+  public void updateEnergy(String emsId, Energy energy) {
+    updateEnergy(ImmutableMap.of(emsId, energy));
+  }
 
-    return null;
+  @Override
+  public void updateEnergy(Map<String, Energy> energies) {
+    Map<String, Energy> changed = Maps.newHashMapWithExpectedSize(energies.size());
+    Map<EnergyDayKey, Energy> history = Maps.newHashMapWithExpectedSize(energies.size());
+    long oldest = oldestRetainedDay();
+    energies.forEach((emsId, energy) -> {
+      if (!isChanged(emsId, energy)) {
+        return;
+      }
+
+      changed.put(emsId, energy);
+      EnergyDayKey key = EnergyDayKey.of(emsId, energy.timestamp());
+      if (key.epochDay() >= oldest) {
+        history.put(key, energy);
+      }
+    });
+
+    if (!changed.isEmpty()) {
+      energyData.putAll(changed);
+    }
+    if (!history.isEmpty()) {
+      energyHistory.putAll(history);
+    }
+  }
+
+  // Only drops writes that change nothing. The map replicates whole values,
+  // changed slots are worked out by each node as it applies them.
+  private boolean isChanged(String emsId, Energy energy) {
+    if (energy.equals(energyData.get(emsId))) {
+      suppressedUpdates.incrementAndGet();
+      return false;
+    }
+    return true;
   }
 
   @Override
@@ -79,6 +386,39 @@ public class DistributedFlexcommEnergyStore extends AbstractStore<FlexcommEnergy
     return energyData.get(emsId);
   }
 
+  @Override
+  public Energy getEnergy(String emsId, Instant timestamp) {
+    return energyHistory.get(EnergyDayKey.of(emsId, timestamp));
+  }
+
+  @Override
+  public List<Energy> getEnergyHistory(String emsId, Instant from, Instant to) {
+    ImmutableList.Builder<Energy> history = ImmutableList.builder();
+    long last = EnergyDayKey.epochDay(to);
+    for (long day = Math.max(EnergyDayKey.epochDay(from), oldestRetainedDay()); day <= last; ++day) {
+      Energy energy = energyHistory.get(new EnergyDayKey(emsId, day));
+      if (energy != null) {
+        history.add(energy);
+      }
+    }
+    return history.build();
+  }
+
+  /**
+   * Returns the number of updates dropped because they matched the stored
+   * energy.
+   *
+   * @return suppressed update count
+   */
+  public long suppressedUpdateCount() {
+    return suppressedUpdates.get();
+  }
+
+  @Override
+  public EnergyAggregate getEnergyAggregate() {
+    return energyAggregator.aggregate();
+  }
+
   @Override
   public FlexcommEnergyEvent removeEnergy(String emsId) {
     energyData.remove(emsId);
@@ -86,15 +426,38 @@ public class DistributedFlexcommEnergyStore extends AbstractStore<FlexcommEnergy
     return null;
   }
 
+  private long oldestRetainedDay() {
+    return EnergyDayKey.epochDay(Instant.now()) - historyRetentionDays + 1;
+  }
+
+  private void purgeHistory() {
+    try {
+      long oldest = oldestRetainedDay();
+      energyHistory.keySet().stream()
+          .filter(key -> key.epochDay() < oldest)
+          .forEach(energyHistory::remove);
+    } catch (Exception e) {
+      log.warn("Failed to purge energy history", e);
+    }
+  }
+
   private class InternalEnergyListerner implements EventuallyConsistentMapListener<String, Energy> {
     @Override
     public void event(EventuallyConsistentMapEvent<String, Energy> event) {
       Energy energy = event.value();
       switch (event.type()) {
         case PUT:
-          notifyDelegate(new FlexcommEnergyEvent(ENERGY_UPDATED, energy));
+          puts.mark();
+          // Replays of an already applied value carry no change
+          if (!energyAggregator.update(energy).isEmpty()) {
+            energyVersion.incrementAndGet();
+            energyUpdates.add(event.key());
+          }
           break;
         case REMOVE:
+          removes.mark();
+          energyVersion.incrementAndGet();
+          energyAggregator.remove(event.key());
           notifyDelegate(new FlexcommEnergyEvent(ENERGY_REMOVED, energy));
           break;
         default:
@@ -103,4 +466,26 @@ public class DistributedFlexcommEnergyStore extends AbstractStore<FlexcommEnergy
     }
   }
 
+  // Coalesces the PUTs of a poll cycle into a single event
+  private class EnergyUpdateAccumulator extends AbstractAccumulator<String> {
+
+    EnergyUpdateAccumulator(Timer timer) {
+      super(timer, EVENT_BATCH_MAX_ITEMS, EVENT_BATCH_MAX_MILLIS, EVENT_BATCH_IDLE_MILLIS);
+    }
+
+    @Override
+    public void processItems(List<String> items) {
+      Set<String> emsIds = ImmutableSet.copyOf(items);
+      if (emsIds.size() > 1) {
+        notifyDelegate(new FlexcommEnergyEvent(ENERGY_BATCH_UPDATED, emsIds));
+        return;
+      }
+
+      Energy energy = energyData.get(items.get(0));
+      if (energy != null) {
+        notifyDelegate(new FlexcommEnergyEvent(ENERGY_UPDATED, energy));
+      }
+    }
+  }
+
 }
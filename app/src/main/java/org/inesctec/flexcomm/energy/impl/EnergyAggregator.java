@@ -0,0 +1,209 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyAggregate;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergyAggregate;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Per slot sum, min, max and count over a set of energies, maintained by
+ * applying the difference between the previous and the new energy of an EMS.
+ * An update for the same day only touches the slots that changed.
+ * <p>
+ * Sums and counts are updated in place. When a value equal to the current
+ * min or max leaves a slot, the slot is only marked and its extremes are
+ * recomputed on the next read, which also clears any rounding drift in its
+ * sum. Reads are served from a cached aggregate until the next change.
+ */
+final class EnergyAggregator {
+
+  private final Map<String, Energy> applied = Maps.newHashMap();
+
+  private final Series flexibility = new Series(Energy::flexibilityAt);
+  private final Series estimate = new Series(Energy::estimateAt);
+  private int[] count = new int[0];
+
+  private volatile EnergyAggregate cached = DefaultEnergyAggregate.EMPTY;
+
+  static EnergyAggregate aggregate(Iterable<Energy> energies) {
+    EnergyAggregator aggregator = new EnergyAggregator();
+    for (Energy energy : energies) {
+      if (energy != null) {
+        aggregator.update(energy);
+      }
+    }
+    return aggregator.aggregate();
+  }
+
+  /**
+   * Applies the energy of an EMS, replacing the previous one.
+   * <p>
+   * When both energies cover the same day only the changed slots are
+   * touched.
+   *
+   * @param energy new energy
+   * @return the slots that changed
+   */
+  synchronized EnergyPatch update(Energy energy) {
+    Energy previous = applied.put(energy.emsId(), energy);
+    EnergyPatch patch = EnergyPatch.diff(previous, energy);
+    if (patch.isFull()) {
+      if (previous != null) {
+        apply(previous, -1);
+      }
+      apply(energy, 1);
+    } else {
+      for (int slot = patch.nextSlot(0); slot >= 0; slot = patch.nextSlot(slot + 1)) {
+        flexibility.apply(slot, previous.flexibilityAt(slot), -1, count[slot]);
+        flexibility.apply(slot, energy.flexibilityAt(slot), 1, count[slot]);
+        estimate.apply(slot, previous.estimateAt(slot), -1, count[slot]);
+        estimate.apply(slot, energy.estimateAt(slot), 1, count[slot]);
+      }
+    }
+
+    if (patch.isFull() || patch.size() > 0) {
+      cached = null;
+    }
+    return patch;
+  }
+
+  synchronized void remove(String emsId) {
+    Energy previous = applied.remove(emsId);
+    if (previous != null) {
+      apply(previous, -1);
+      cached = null;
+    }
+  }
+
+  synchronized void clear() {
+    applied.clear();
+    count = new int[0];
+    flexibility.resize(0);
+    estimate.resize(0);
+    cached = DefaultEnergyAggregate.EMPTY;
+  }
+
+  EnergyAggregate aggregate() {
+    EnergyAggregate aggregate = cached;
+    if (aggregate != null) {
+      return aggregate;
+    }
+
+    synchronized (this) {
+      if (cached == null) {
+        flexibility.settle(applied.values());
+        estimate.settle(applied.values());
+
+        int slots = count.length;
+        while (slots > 0 && count[slots - 1] == 0) {
+          --slots;
+        }
+        cached = new DefaultEnergyAggregate(Arrays.copyOf(count, slots),
+            Arrays.copyOf(flexibility.sum, slots), Arrays.copyOf(flexibility.min, slots),
+            Arrays.copyOf(flexibility.max, slots), Arrays.copyOf(estimate.sum, slots),
+            Arrays.copyOf(estimate.min, slots), Arrays.copyOf(estimate.max, slots));
+      }
+      return cached;
+    }
+  }
+
+  private void apply(Energy energy, int sign) {
+    int slots = energy.slotCount();
+    if (slots > count.length) {
+      count = Arrays.copyOf(count, slots);
+      flexibility.resize(slots);
+      estimate.resize(slots);
+    }
+
+    for (int slot = 0; slot < slots; ++slot) {
+      count[slot] += sign;
+      flexibility.apply(slot, energy.flexibilityAt(slot), sign, count[slot]);
+      estimate.apply(slot, energy.estimateAt(slot), sign, count[slot]);
+    }
+  }
+
+  @FunctionalInterface
+  private interface SlotValue {
+    double at(Energy energy, int slot);
+  }
+
+  private static final class Series {
+    private final SlotValue value;
+    private final BitSet dirty = new BitSet();
+    private double[] sum = new double[0];
+    private double[] min = new double[0];
+    private double[] max = new double[0];
+
+    private Series(SlotValue value) {
+      this.value = value;
+    }
+
+    private void resize(int slots) {
+      int previous = sum.length;
+      sum = Arrays.copyOf(sum, slots);
+      min = Arrays.copyOf(min, slots);
+      max = Arrays.copyOf(max, slots);
+      if (slots > previous) {
+        Arrays.fill(min, previous, slots, Double.NaN);
+        Arrays.fill(max, previous, slots, Double.NaN);
+      } else {
+        dirty.clear(slots, Math.max(previous, slots));
+      }
+    }
+
+    private void apply(int slot, double v, int sign, int remaining) {
+      if (sign > 0) {
+        sum[slot] += v;
+        if (remaining == 1) {
+          min[slot] = v;
+          max[slot] = v;
+        } else {
+          min[slot] = Math.min(min[slot], v);
+          max[slot] = Math.max(max[slot], v);
+        }
+        return;
+      }
+
+      if (remaining == 0) {
+        sum[slot] = 0;
+        min[slot] = Double.NaN;
+        max[slot] = Double.NaN;
+        dirty.clear(slot);
+        return;
+      }
+
+      sum[slot] -= v;
+      if (v <= min[slot] || v >= max[slot]) {
+        dirty.set(slot);
+      }
+    }
+
+    private void settle(Collection<Energy> energies) {
+      if (dirty.isEmpty()) {
+        return;
+      }
+
+      for (int slot = dirty.nextSetBit(0); slot >= 0; slot = dirty.nextSetBit(slot + 1)) {
+        sum[slot] = 0;
+        min[slot] = Double.POSITIVE_INFINITY;
+        max[slot] = Double.NEGATIVE_INFINITY;
+      }
+      for (Energy energy : energies) {
+        int slots = energy.slotCount();
+        for (int slot = dirty.nextSetBit(0); slot >= 0 && slot < slots; slot = dirty.nextSetBit(slot + 1)) {
+          double v = value.at(energy, slot);
+          sum[slot] += v;
+          min[slot] = Math.min(min[slot], v);
+          max[slot] = Math.max(max[slot], v);
+        }
+      }
+      dirty.clear();
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Identifies the energy data of one EMS for one UTC day.
+ */
+public final class EnergyDayKey {
+
+  private static final long SECONDS_PER_DAY = TimeUnit.DAYS.toSeconds(1);
+
+  private final String emsId;
+  private final long epochDay;
+
+  public EnergyDayKey(String emsId, long epochDay) {
+    this.emsId = checkNotNull(emsId);
+    this.epochDay = epochDay;
+  }
+
+  public static EnergyDayKey of(String emsId, Instant timestamp) {
+    return new EnergyDayKey(emsId, epochDay(timestamp));
+  }
+
+  public static long epochDay(Instant timestamp) {
+    return Math.floorDiv(timestamp.getEpochSecond(), SECONDS_PER_DAY);
+  }
+
+  public String emsId() {
+    return emsId;
+  }
+
+  public long epochDay() {
+    return epochDay;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(emsId, epochDay);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof EnergyDayKey)) {
+      return false;
+    }
+    EnergyDayKey other = (EnergyDayKey) obj;
+    return epochDay == other.epochDay && emsId.equals(other.emsId);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("emsId", emsId)
+        .add("epochDay", epochDay)
+        .toString();
+  }
+}
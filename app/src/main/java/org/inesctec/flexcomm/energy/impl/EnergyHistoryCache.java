@@ -0,0 +1,107 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.slf4j.Logger;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Bounded cache of past days energy data, keyed by EMS and day.
+ * <p>
+ * Past days never change upstream, so they are kept until evicted. Days the
+ * upstream did not return anything for are remembered for a limited time.
+ * The current and future days are never cached.
+ */
+final class EnergyHistoryCache {
+
+  private final Logger log = getLogger(getClass());
+
+  private final AtomicLong negativeHits = new AtomicLong();
+  private final AtomicLong bypasses = new AtomicLong();
+
+  private volatile Cache<EnergyDayKey, Entry> cache;
+  private volatile long maxEntries;
+  private volatile long negativeTtlMillis;
+
+  EnergyHistoryCache(long maxEntries, long negativeTtl, TimeUnit unit) {
+    configure(maxEntries, negativeTtl, unit);
+  }
+
+  void configure(long maxEntries, long negativeTtl, TimeUnit unit) {
+    this.negativeTtlMillis = unit.toMillis(negativeTtl);
+    if (cache == null || this.maxEntries != maxEntries) {
+      this.maxEntries = maxEntries;
+      this.cache = CacheBuilder.newBuilder()
+          .maximumSize(maxEntries)
+          .recordStats()
+          .build();
+    }
+  }
+
+  Energy get(String emsId, Instant timestamp, BiFunction<String, Instant, Energy> loader) {
+    EnergyDayKey key = EnergyDayKey.of(emsId, timestamp);
+    if (key.epochDay() >= EnergyDayKey.epochDay(Instant.now())) {
+      bypasses.incrementAndGet();
+      return loader.apply(emsId, timestamp);
+    }
+
+    Cache<EnergyDayKey, Entry> current = cache;
+    Entry[] loaded = new Entry[1];
+    Callable<Entry> load = () -> loaded[0] = new Entry(loader.apply(emsId, timestamp));
+    try {
+      Entry entry = current.get(key, load);
+      // A miss this call just loaded is neither expired nor a negative hit
+      if (entry.energy == null && entry != loaded[0]) {
+        if (System.currentTimeMillis() - entry.loadedAt > negativeTtlMillis) {
+          current.asMap().remove(key, entry);
+          entry = current.get(key, load);
+        } else {
+          negativeHits.incrementAndGet();
+        }
+      }
+      return entry.energy;
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      log.warn("Failed to load energy for emsId {} at {}: {}", emsId, timestamp,
+          Throwables.getRootCause(e).getMessage());
+      return null;
+    }
+  }
+
+  long size() {
+    return cache.size();
+  }
+
+  CacheStats stats() {
+    return cache.stats();
+  }
+
+  long negativeHitCount() {
+    return negativeHits.get();
+  }
+
+  long bypassCount() {
+    return bypasses.get();
+  }
+
+  private static final class Entry {
+    private final Energy energy;
+    private final long loadedAt = System.currentTimeMillis();
+
+    private Entry(Energy energy) {
+      this.energy = energy;
+    }
+  }
+}
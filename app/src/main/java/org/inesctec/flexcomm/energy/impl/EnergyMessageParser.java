@@ -0,0 +1,67 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+
+import org.inesctec.flexcomm.energy.impl.objects.EnergyMessage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Parses upstream EMS responses.
+ * <p>
+ * The reader is built once and shared, it is immutable and thread safe. The
+ * flexibility series are bound straight into primitive arrays.
+ */
+public final class EnergyMessageParser {
+
+  private static final ObjectReader READER = new ObjectMapper()
+      .readerFor(new TypeReference<List<EnergyMessage>>() {
+      });
+
+  private static final DateTimeFormatter REQUEST_TIMESTAMP_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE
+      .withZone(ZoneOffset.UTC);
+
+  private static final DateTimeFormatter RESPONSE_TIMESTAMP_FORMATTER = new DateTimeFormatterBuilder()
+      .parseCaseInsensitive()
+      .appendPattern("dd/MM/yyyy hh:mm a")
+      .toFormatter(Locale.ENGLISH);
+
+  private EnergyMessageParser() {
+  }
+
+  public static List<EnergyMessage> parse(InputStream body) throws IOException {
+    return READER.readValue(body);
+  }
+
+  public static List<EnergyMessage> parse(byte[] body) throws IOException {
+    return READER.readValue(body);
+  }
+
+  /**
+   * Parses an upstream timestamp into the start of its UTC day.
+   *
+   * @param timestamp upstream timestamp
+   * @return start of the day
+   * @throws DateTimeParseException if the timestamp is malformed
+   */
+  public static Instant parseDay(String timestamp) {
+    LocalDate day = LocalDateTime.parse(timestamp, RESPONSE_TIMESTAMP_FORMATTER).toLocalDate();
+    return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+  }
+
+  public static String formatDay(Instant timestamp) {
+    return REQUEST_TIMESTAMP_FORMATTER.format(timestamp);
+  }
+}
@@ -0,0 +1,70 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.util.BitSet;
+import java.util.Objects;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+
+/**
+ * Slots that differ between two energies of the same EMS.
+ * <p>
+ * A patch is full when the energies cannot be compared slot by slot, that is
+ * when there is no previous energy or when the day or the series length
+ * changed.
+ */
+final class EnergyPatch {
+
+  private static final EnergyPatch FULL = new EnergyPatch(null, true);
+
+  private final BitSet slots;
+  private final boolean annotations;
+
+  private EnergyPatch(BitSet slots, boolean annotations) {
+    this.slots = slots;
+    this.annotations = annotations;
+  }
+
+  static EnergyPatch diff(Energy previous, Energy next) {
+    if (previous == null || !previous.timestamp().equals(next.timestamp())
+        || previous.flexibilityArray().size() != next.flexibilityArray().size()
+        || previous.estimateArray().size() != next.estimateArray().size()) {
+      return FULL;
+    }
+
+    BitSet slots = new BitSet();
+    for (int slot = 0; slot < next.slotCount(); ++slot) {
+      if (Double.compare(previous.flexibilityAt(slot), next.flexibilityAt(slot)) != 0
+          || Double.compare(previous.estimateAt(slot), next.estimateAt(slot)) != 0) {
+        slots.set(slot);
+      }
+    }
+    return new EnergyPatch(slots, !Objects.equals(previous.annotations(), next.annotations()));
+  }
+
+  boolean isFull() {
+    return slots == null;
+  }
+
+  /**
+   * Returns whether both energies are identical.
+   *
+   * @return true if nothing changed
+   */
+  boolean isEmpty() {
+    return slots != null && slots.isEmpty() && !annotations;
+  }
+
+  /**
+   * Returns the next changed slot at or after the given one.
+   *
+   * @param from first slot to look at
+   * @return slot index, or -1 if there is none
+   */
+  int nextSlot(int from) {
+    return slots != null ? slots.nextSetBit(from) : -1;
+  }
+
+  int size() {
+    return slots != null ? slots.cardinality() : -1;
+  }
+}
@@ -0,0 +1,169 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyPeriod;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergyPeriod;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Immutable view of the energy period of every EMS for one 15 minute slot.
+ */
+final class EnergyPeriodSnapshot {
+
+  static final long SLOT_SECONDS = TimeUnit.MINUTES.toSeconds(15);
+  static final int SLOTS_PER_DAY = (int) (TimeUnit.DAYS.toSeconds(1) / SLOT_SECONDS);
+
+  static final EnergyPeriodSnapshot EMPTY = new EnergyPeriodSnapshot(Long.MIN_VALUE, ImmutableMap.of());
+
+  private final long epochSlot;
+  private final Map<String, EnergyPeriod> periods;
+  private final List<EnergyPeriod> periodList;
+
+  private EnergyPeriodSnapshot(long epochSlot, Map<String, EnergyPeriod> periods) {
+    this.epochSlot = epochSlot;
+    this.periods = ImmutableMap.copyOf(periods);
+    this.periodList = ImmutableList.copyOf(this.periods.values());
+  }
+
+  static long epochSlot(Instant instant) {
+    return Math.floorDiv(instant.getEpochSecond(), SLOT_SECONDS);
+  }
+
+  static int slotOfDay(long epochSlot) {
+    return (int) Math.floorMod(epochSlot, (long) SLOTS_PER_DAY);
+  }
+
+  static Instant slotStart(long epochSlot) {
+    return Instant.ofEpochSecond(epochSlot * SLOT_SECONDS);
+  }
+
+  static EnergyPeriod periodOf(Energy energy, int slot) {
+    if (slot >= energy.slotCount()) {
+      return null;
+    }
+
+    return DefaultEnergyPeriod.builder()
+        .setEmsId(energy.emsId())
+        .setTimestamp(energy.timestamp().plus(slot * 15L, ChronoUnit.MINUTES))
+        .setFlexibility(energy.flexibilityAt(slot))
+        .setEstimate(energy.estimateAt(slot))
+        .setAnnotations(energy.annotations())
+        .build();
+  }
+
+  static boolean samePeriod(EnergyPeriod a, EnergyPeriod b) {
+    if (a == null || b == null) {
+      return a == b;
+    }
+    return a.timestamp().equals(b.timestamp())
+        && Double.compare(a.flexibility(), b.flexibility()) == 0
+        && Double.compare(a.estimate(), b.estimate()) == 0;
+  }
+
+  // Ignores the timestamp, so periods of consecutive slots compare by value
+  static boolean sameValue(EnergyPeriod a, EnergyPeriod b) {
+    if (a == null || b == null) {
+      return a == b;
+    }
+    return Double.compare(a.flexibility(), b.flexibility()) == 0
+        && Double.compare(a.estimate(), b.estimate()) == 0;
+  }
+
+  static EnergyPeriodSnapshot of(long epochSlot, Iterable<Energy> energies) {
+    int slot = slotOfDay(epochSlot);
+    Map<String, EnergyPeriod> periods = Maps.newLinkedHashMap();
+    for (Energy energy : energies) {
+      if (energy == null) {
+        continue;
+      }
+      EnergyPeriod period = periodOf(energy, slot);
+      if (period != null) {
+        periods.put(energy.emsId(), period);
+      }
+    }
+    return new EnergyPeriodSnapshot(epochSlot, periods);
+  }
+
+  EnergyPeriodSnapshot with(Energy energy) {
+    Map<String, EnergyPeriod> updated = Maps.newLinkedHashMap(periods);
+    EnergyPeriod period = periodOf(energy, slotOfDay(epochSlot));
+    if (period != null) {
+      updated.put(energy.emsId(), period);
+    } else {
+      updated.remove(energy.emsId());
+    }
+    return new EnergyPeriodSnapshot(epochSlot, updated);
+  }
+
+  EnergyPeriodSnapshot with(Iterable<Energy> energies) {
+    Map<String, EnergyPeriod> updated = Maps.newLinkedHashMap(periods);
+    int slot = slotOfDay(epochSlot);
+    for (Energy energy : energies) {
+      EnergyPeriod period = periodOf(energy, slot);
+      if (period != null) {
+        updated.put(energy.emsId(), period);
+      } else {
+        updated.remove(energy.emsId());
+      }
+    }
+    return new EnergyPeriodSnapshot(epochSlot, updated);
+  }
+
+  EnergyPeriodSnapshot without(String emsId) {
+    if (!periods.containsKey(emsId)) {
+      return this;
+    }
+    Map<String, EnergyPeriod> updated = Maps.newLinkedHashMap(periods);
+    updated.remove(emsId);
+    return new EnergyPeriodSnapshot(epochSlot, updated);
+  }
+
+  /**
+   * Returns the EMS whose period value differs from another snapshot,
+   * including those that gained or lost a period.
+   *
+   * @param previous snapshot to compare with, usually of the previous slot
+   * @return emsIds
+   */
+  Set<String> valueChanges(EnergyPeriodSnapshot previous) {
+    Set<String> changed = Sets.newLinkedHashSet();
+    periods.forEach((emsId, period) -> {
+      if (!sameValue(previous.period(emsId), period)) {
+        changed.add(emsId);
+      }
+    });
+    for (String emsId : previous.periods.keySet()) {
+      if (!periods.containsKey(emsId)) {
+        changed.add(emsId);
+      }
+    }
+    return changed;
+  }
+
+  long epochSlot() {
+    return epochSlot;
+  }
+
+  boolean isCurrent(Instant now) {
+    return epochSlot == epochSlot(now);
+  }
+
+  EnergyPeriod period(String emsId) {
+    return periods.get(emsId);
+  }
+
+  List<EnergyPeriod> periods() {
+    return periodList;
+  }
+}
@@ -0,0 +1,166 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.inesctec.flexcomm.energy.api.EnergyPoll;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Spreads the daily EMS polls over a window after midnight UTC.
+ * <p>
+ * Each EMS is polled at a fixed point of the window derived from a hash of
+ * its id, so it keeps the same slot every day and on every node. Due polls
+ * are kept in a priority queue and released through a token bucket, one
+ * token per upstream request.
+ */
+final class EnergyPollScheduler {
+
+  private static final HashFunction JITTER_HASH = Hashing.murmur3_32();
+
+  private final PriorityQueue<Poll> queue = new PriorityQueue<>(Comparator.comparingLong(Poll::due));
+  // Latest poll of each EMS, queue entries not found here are stale
+  private final Map<String, Poll> polls = Maps.newHashMap();
+
+  private long offsetMillis;
+  private long windowMillis;
+  private final RateLimiter rateLimiter;
+
+  private static final class Poll {
+    private final String emsId;
+    private final long due;
+    private final long last;
+
+    private Poll(String emsId, long due, long last) {
+      this.emsId = emsId;
+      this.due = due;
+      this.last = last;
+    }
+
+    private long due() {
+      return due;
+    }
+  }
+
+  EnergyPollScheduler(long offset, long window, TimeUnit unit, double rate) {
+    this.offsetMillis = unit.toMillis(offset);
+    this.windowMillis = unit.toMillis(window);
+    this.rateLimiter = RateLimiter.create(rate);
+  }
+
+  /**
+   * Updates the window and the rate, moving every EMS to its new slot.
+   *
+   * @param offset start of the window after midnight
+   * @param window length of the window
+   * @param unit   unit of offset and window
+   * @param rate   upstream requests per second
+   * @param now    current time
+   */
+  synchronized void configure(long offset, long window, TimeUnit unit, double rate, Instant now) {
+    rateLimiter.setRate(rate);
+    long newOffset = unit.toMillis(offset);
+    long newWindow = unit.toMillis(window);
+    if (newOffset == offsetMillis && newWindow == windowMillis) {
+      return;
+    }
+
+    offsetMillis = newOffset;
+    windowMillis = newWindow;
+    List<Poll> current = ImmutableList.copyOf(polls.values());
+    queue.clear();
+    polls.clear();
+    for (Poll poll : current) {
+      schedule(new Poll(poll.emsId, nextDue(poll.emsId, now.toEpochMilli()), poll.last));
+    }
+  }
+
+  synchronized boolean add(String emsId, Instant now) {
+    if (polls.containsKey(emsId)) {
+      return false;
+    }
+    schedule(new Poll(emsId, nextDue(emsId, now.toEpochMilli()), 0));
+    return true;
+  }
+
+  synchronized boolean remove(String emsId) {
+    return polls.remove(emsId) != null;
+  }
+
+  synchronized void clear() {
+    queue.clear();
+    polls.clear();
+  }
+
+  /**
+   * Takes the polls that are due, grouped in batches of one request each,
+   * and moves them to the next day. Stops as soon as the token bucket is
+   * empty, the remaining polls stay due for the next call.
+   *
+   * @param now       current time
+   * @param batchSize maximum EMS per request
+   * @return EMS to request, one list per request
+   */
+  synchronized List<List<String>> takeDue(Instant now, int batchSize) {
+    long nowMillis = now.toEpochMilli();
+    List<List<String>> batches = new ArrayList<>();
+    while (isDue(nowMillis) && rateLimiter.tryAcquire()) {
+      List<String> batch = new ArrayList<>(batchSize);
+      while (batch.size() < batchSize && isDue(nowMillis)) {
+        Poll poll = queue.poll();
+        batch.add(poll.emsId);
+        schedule(new Poll(poll.emsId, nextDue(poll.emsId, nowMillis), nowMillis));
+      }
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  synchronized List<EnergyPoll> schedule() {
+    List<Poll> sorted = new ArrayList<>(polls.values());
+    sorted.sort(Comparator.comparingLong(Poll::due));
+
+    ImmutableList.Builder<EnergyPoll> res = ImmutableList.builder();
+    for (Poll poll : sorted) {
+      res.add(new EnergyPoll(poll.emsId, Instant.ofEpochMilli(poll.due),
+          poll.last != 0 ? Instant.ofEpochMilli(poll.last) : null));
+    }
+    return res.build();
+  }
+
+  private boolean isDue(long nowMillis) {
+    Poll head;
+    while ((head = queue.peek()) != null && polls.get(head.emsId) != head) {
+      queue.poll();
+    }
+    return head != null && head.due <= nowMillis;
+  }
+
+  private void schedule(Poll poll) {
+    polls.put(poll.emsId, poll);
+    queue.add(poll);
+  }
+
+  private long nextDue(String emsId, long nowMillis) {
+    long jitter = windowMillis > 0
+        ? Math.floorMod((long) JITTER_HASH.hashUnencodedChars(emsId).asInt(), windowMillis)
+        : 0;
+    long dayStart = Instant.ofEpochMilli(nowMillis).truncatedTo(ChronoUnit.DAYS).toEpochMilli();
+    long due = dayStart + offsetMillis + jitter;
+    while (due <= nowMillis) {
+      due += TimeUnit.DAYS.toMillis(1);
+    }
+    return due;
+  }
+}
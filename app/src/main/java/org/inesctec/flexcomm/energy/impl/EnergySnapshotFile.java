@@ -0,0 +1,259 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+
+/**
+ * Binary snapshot of the current energy of every EMS, read and written
+ * through memory-mapped files.
+ * <p>
+ * The file holds a header followed by fixed-size records, all sized by the
+ * longest EMS id and series of the snapshot, so records are addressed by
+ * offset and decoded straight from the mapping. The header carries a
+ * version and a CRC32 of the records. Snapshots are written to a temporary
+ * file and moved over the previous one, a crash never leaves a partial
+ * file behind. Annotations are not kept.
+ */
+final class EnergySnapshotFile {
+
+  private static final int MAGIC = 0x46584553;
+  private static final int VERSION = 1;
+
+  // magic, version, id capacity, slot capacity, count, saved at, crc
+  private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 4 + 8 + 4;
+
+  private static final int MAX_ID_BYTES = Short.MAX_VALUE;
+
+  private EnergySnapshotFile() {
+  }
+
+  /**
+   * Writes a snapshot, replacing any previous one.
+   *
+   * @param path     snapshot file
+   * @param energies energies to write
+   * @return number of records written
+   * @throws IOException if the snapshot cannot be written
+   */
+  static int write(Path path, Collection<Energy> energies) throws IOException {
+    List<byte[]> ids = new ArrayList<>(energies.size());
+    List<Energy> records = new ArrayList<>(energies.size());
+    int idCapacity = 0;
+    int slotCapacity = 0;
+    for (Energy energy : energies) {
+      byte[] id = energy.emsId().getBytes(UTF_8);
+      if (id.length > MAX_ID_BYTES) {
+        continue;
+      }
+      ids.add(id);
+      records.add(energy);
+      idCapacity = Math.max(idCapacity, id.length);
+      slotCapacity = Math.max(slotCapacity,
+          Math.max(energy.flexibilityBuffer().remaining(), energy.estimateBuffer().remaining()));
+    }
+
+    int recordSize = recordSize(idCapacity, slotCapacity);
+    long size = HEADER_SIZE + (long) recordSize * records.size();
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Snapshot of " + records.size() + " records is too large");
+    }
+
+    Path parent = path.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+      buffer.position(HEADER_SIZE);
+      for (int i = 0; i < records.size(); ++i) {
+        writeRecord(buffer, ids.get(i), records.get(i), idCapacity, slotCapacity);
+      }
+
+      buffer.position(0);
+      buffer.putInt(MAGIC)
+          .putInt(VERSION)
+          .putInt(idCapacity)
+          .putInt(slotCapacity)
+          .putInt(records.size())
+          .putLong(System.currentTimeMillis())
+          .putInt(checksum(buffer, recordSize, records.size()));
+      buffer.force();
+    }
+
+    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return records.size();
+  }
+
+  /**
+   * Reads a snapshot.
+   *
+   * @param path snapshot file
+   * @return the snapshot, empty if there is none
+   * @throws IOException if the snapshot cannot be read or is corrupt
+   */
+  static Snapshot read(Path path) throws IOException {
+    if (!Files.isRegularFile(path)) {
+      return new Snapshot(0, new ArrayList<>());
+    }
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot size " + size + " is invalid");
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Not an energy snapshot");
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Snapshot version " + version + " is not supported");
+      }
+      int idCapacity = buffer.getInt();
+      int slotCapacity = buffer.getInt();
+      int count = buffer.getInt();
+      long savedAt = buffer.getLong();
+      int crc = buffer.getInt();
+      if (idCapacity < 0 || idCapacity > MAX_ID_BYTES || slotCapacity < 0 || count < 0) {
+        throw new IOException("Snapshot header is invalid");
+      }
+
+      int recordSize = recordSize(idCapacity, slotCapacity);
+      if (size != HEADER_SIZE + (long) recordSize * count) {
+        throw new IOException("Snapshot is truncated");
+      }
+      if (checksum(buffer, recordSize, count) != crc) {
+        throw new IOException("Snapshot checksum mismatch");
+      }
+
+      List<Energy> energies = new ArrayList<>(count);
+      buffer.position(HEADER_SIZE);
+      for (int i = 0; i < count; ++i) {
+        energies.add(readRecord(buffer, idCapacity, slotCapacity));
+      }
+      return new Snapshot(savedAt, energies);
+    }
+  }
+
+  // id length, id, epoch second, nanos, both series lengths, both series
+  private static int recordSize(int idCapacity, int slotCapacity) {
+    return 2 + idCapacity + 8 + 4 + 4 + 4 + 2 * Double.BYTES * slotCapacity;
+  }
+
+  private static int checksum(ByteBuffer buffer, int recordSize, int count) {
+    ByteBuffer records = buffer.duplicate();
+    records.limit(HEADER_SIZE + recordSize * count).position(HEADER_SIZE);
+    CRC32 crc = new CRC32();
+    crc.update(records);
+    return (int) crc.getValue();
+  }
+
+  private static void writeRecord(ByteBuffer buffer, byte[] id, Energy energy, int idCapacity,
+      int slotCapacity) {
+    int start = buffer.position();
+    buffer.putShort((short) id.length).put(id);
+    buffer.position(start + 2 + idCapacity);
+
+    Instant timestamp = energy.timestamp();
+    buffer.putLong(timestamp.getEpochSecond()).putInt(timestamp.getNano());
+
+    DoubleBuffer flexibility = energy.flexibilityBuffer();
+    DoubleBuffer estimate = energy.estimateBuffer();
+    buffer.putInt(flexibility.remaining()).putInt(estimate.remaining());
+    writeSeries(buffer, flexibility, slotCapacity);
+    writeSeries(buffer, estimate, slotCapacity);
+  }
+
+  // Unused slots are left zeroed, a fresh mapping is zero filled
+  private static void writeSeries(ByteBuffer buffer, DoubleBuffer values, int slotCapacity) {
+    int start = buffer.position();
+    buffer.asDoubleBuffer().put(values);
+    buffer.position(start + Double.BYTES * slotCapacity);
+  }
+
+  private static Energy readRecord(ByteBuffer buffer, int idCapacity, int slotCapacity) throws IOException {
+    int start = buffer.position();
+    int idLength = buffer.getShort();
+    if (idLength < 0 || idLength > idCapacity) {
+      throw new IOException("Snapshot record is invalid");
+    }
+    byte[] id = new byte[idLength];
+    buffer.get(id);
+    buffer.position(start + 2 + idCapacity);
+
+    Instant timestamp = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+    int flexibilityLength = buffer.getInt();
+    int estimateLength = buffer.getInt();
+    if (flexibilityLength < 0 || flexibilityLength > slotCapacity
+        || estimateLength < 0 || estimateLength > slotCapacity) {
+      throw new IOException("Snapshot record is invalid");
+    }
+
+    return DefaultEnergy.builder()
+        .setEmsId(new String(id, UTF_8))
+        .setTimestamp(timestamp)
+        .setFlexibilityArray(readSeries(buffer, flexibilityLength, slotCapacity))
+        .setEstimateArray(readSeries(buffer, estimateLength, slotCapacity))
+        .build();
+  }
+
+  private static double[] readSeries(ByteBuffer buffer, int length, int slotCapacity) {
+    int start = buffer.position();
+    double[] values = new double[length];
+    buffer.asDoubleBuffer().get(values);
+    buffer.position(start + Double.BYTES * slotCapacity);
+    return values;
+  }
+
+  /**
+   * Energies read from a snapshot, with the time it was saved.
+   */
+  static final class Snapshot {
+    private final long savedAt;
+    private final List<Energy> energies;
+
+    private Snapshot(long savedAt, List<Energy> energies) {
+      this.savedAt = savedAt;
+      this.energies = energies;
+    }
+
+    /**
+     * Returns when the snapshot was saved.
+     *
+     * @return milliseconds since the epoch, 0 if there is no snapshot
+     */
+    long savedAt() {
+      return savedAt;
+    }
+
+    /**
+     * Returns the energies of the snapshot.
+     *
+     * @return energies
+     */
+    List<Energy> energies() {
+      return energies;
+    }
+  }
+}
@@ -3,20 +3,43 @@ package org.inesctec.flexcomm.energy.impl;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.inesctec.flexcomm.energy.api.FlexcommEnergyEvent.Type.ENERGY_PERIOD_CHANGED;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HISTORY_CACHE_NEGATIVE_TTL;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HISTORY_CACHE_NEGATIVE_TTL_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HISTORY_CACHE_SIZE;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HISTORY_CACHE_SIZE_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.QUERY_THREADS;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.QUERY_THREADS_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.QUERY_TIMEOUT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.QUERY_TIMEOUT_DEFAULT;
+import static org.onlab.util.Tools.get;
+import static org.onlab.util.Tools.groupedThreads;
 import static org.onosproject.security.AppGuard.checkPermission;
 import static org.onosproject.security.AppPermission.Type.DEVICE_READ;
 
 import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Dictionary;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyAggregate;
+import org.inesctec.flexcomm.energy.api.EnergyMetrics;
 import org.inesctec.flexcomm.energy.api.EnergyPeriod;
+import org.inesctec.flexcomm.energy.api.EnergyQueryResult;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyEvent;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyListener;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyProvider;
@@ -25,28 +48,42 @@ import org.inesctec.flexcomm.energy.api.FlexcommEnergyProviderService;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyService;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyStore;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyStoreDelegate;
-import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergyPeriod;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
 import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.core.CoreService;
 import org.onosproject.net.Device;
 import org.onosproject.net.DeviceId;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
 import org.onosproject.net.device.DeviceService;
 import org.onosproject.net.provider.AbstractListenerProviderRegistry;
 import org.onosproject.net.provider.AbstractProviderService;
 import org.onosproject.net.provider.ProviderId;
+import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 
 @Component(immediate = true, service = {
     FlexcommEnergyService.class,
     FlexcommEnergyProviderRegistry.class
+}, property = {
+    HISTORY_CACHE_SIZE + ":Integer=" + HISTORY_CACHE_SIZE_DEFAULT,
+    HISTORY_CACHE_NEGATIVE_TTL + ":Long=" + HISTORY_CACHE_NEGATIVE_TTL_DEFAULT,
+    QUERY_THREADS + ":Integer=" + QUERY_THREADS_DEFAULT,
+    QUERY_TIMEOUT + ":Long=" + QUERY_TIMEOUT_DEFAULT,
 })
 public class FlexcommEnergyManager
     extends
@@ -57,11 +94,26 @@ public class FlexcommEnergyManager
   private static final String EMS_ID_EMPTY_NULL = "Ems ID cannot be null or empty";
   private static final String DEVICE_ID_NULL = "Device ID cannot be null";
   private static final String TIMESTAMP_NULL = "Timestamp cannot be null";
+  private static final String RANGE_INVALID = "Range start must be before its end";
+  private static final int MAX_RANGE_DAYS = 366;
+  private static final String RANGE_TOO_LONG = "Range cannot span more than " + MAX_RANGE_DAYS + " days";
+
+  private static final String METRICS_FEATURE_HISTORY_CACHE = "HistoryCache";
+  private static final String METRIC_CACHE_SIZE = "size";
+  private static final String METRIC_CACHE_HITS = "hits";
+  private static final String METRIC_CACHE_MISSES = "misses";
+  private static final String METRIC_CACHE_EVICTIONS = "evictions";
+  private static final String METRIC_CACHE_NEGATIVE_HITS = "negativeHits";
+  private static final String METRIC_CACHE_BYPASSES = "bypasses";
 
   private final Logger log = LoggerFactory.getLogger(getClass());
 
   private final FlexcommEnergyStoreDelegate delegate = new InternalEnergyStoreDelegate();
 
+  private final DeviceListener deviceListener = new InternalDeviceListener();
+
+  private final DeviceEmsIndex deviceEmsIds = new DeviceEmsIndex();
+
   @Reference(cardinality = ReferenceCardinality.MANDATORY)
   protected FlexcommEnergyStore store;
 
@@ -74,22 +126,144 @@ public class FlexcommEnergyManager
   @Reference(cardinality = ReferenceCardinality.MANDATORY)
   protected DeviceService deviceService;
 
+  @Reference(cardinality = ReferenceCardinality.MANDATORY)
+  protected MetricsService metricsService;
+
+  private MetricsComponent metricsComponent;
+
+  private MetricsFeature historyCacheFeature;
+
+  private int historyCacheSize = HISTORY_CACHE_SIZE_DEFAULT;
+
+  private long historyCacheNegativeTtl = HISTORY_CACHE_NEGATIVE_TTL_DEFAULT;
+
+  private int queryThreads = QUERY_THREADS_DEFAULT;
+
+  private long queryTimeout = QUERY_TIMEOUT_DEFAULT;
+
+  private ThreadPoolExecutor queryExecutor;
+
+  private ScheduledExecutorService periodExecutor;
+
+  private volatile EnergyPeriodSnapshot periodSnapshot = EnergyPeriodSnapshot.EMPTY;
+
+  // Last snapshot of the slot that ended, until the period tick compares it
+  private EnergyPeriodSnapshot endedPeriodSnapshot;
+
+  private final EnergyHistoryCache historyCache = new EnergyHistoryCache(HISTORY_CACHE_SIZE_DEFAULT,
+      HISTORY_CACHE_NEGATIVE_TTL_DEFAULT, TimeUnit.SECONDS);
+
   @Activate
-  protected void activate() {
+  protected void activate(ComponentContext context) {
+    configService.registerProperties(getClass());
+    queryExecutor = new ThreadPoolExecutor(queryThreads, queryThreads, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), groupedThreads("inesctec/flexcomm/energy", "energy-query-%d", log));
+    modified(context);
+    registerMetrics();
+
     store.setDelegate(delegate);
     eventDispatcher.addSink(FlexcommEnergyEvent.class, listenerRegistry);
 
+    deviceService.addListener(deviceListener);
+    for (Device device : deviceService.getDevices()) {
+      updateDeviceEmsId(device);
+    }
+
+    periodExecutor = newSingleThreadScheduledExecutor(
+        groupedThreads("inesctec/flexcomm/energy", "energy-period", log));
+    refreshPeriodSnapshot(Instant.now());
+    schedulePeriodTick();
+
     log.info("Started");
   }
 
   @Deactivate
   protected void deactivate() {
+    configService.unregisterProperties(getClass(), false);
     store.unsetDelegate(delegate);
     eventDispatcher.removeSink(FlexcommEnergyEvent.class);
 
+    deviceService.removeListener(deviceListener);
+    deviceEmsIds.clear();
+
+    queryExecutor.shutdownNow();
+    queryExecutor = null;
+
+    periodExecutor.shutdownNow();
+    periodExecutor = null;
+
+    removeMetrics();
     log.info("Stopped");
   }
 
+  @Modified
+  protected void modified(ComponentContext context) {
+    Dictionary<?, ?> properties = context != null ? context.getProperties() : new Properties();
+
+    try {
+      String s = get(properties, HISTORY_CACHE_SIZE);
+      if (!isNullOrEmpty(s)) {
+        historyCacheSize = Math.max(0, Integer.parseInt(s.trim()));
+      }
+
+      s = get(properties, HISTORY_CACHE_NEGATIVE_TTL);
+      if (!isNullOrEmpty(s)) {
+        historyCacheNegativeTtl = Math.max(0, Long.parseLong(s.trim()));
+      }
+
+      s = get(properties, QUERY_THREADS);
+      if (!isNullOrEmpty(s)) {
+        queryThreads = Math.max(1, Integer.parseInt(s.trim()));
+      }
+
+      s = get(properties, QUERY_TIMEOUT);
+      if (!isNullOrEmpty(s)) {
+        queryTimeout = Math.max(1, Long.parseLong(s.trim()));
+      }
+    } catch (NumberFormatException | ClassCastException e) {
+      // do nothing
+    }
+
+    historyCache.configure(historyCacheSize, historyCacheNegativeTtl, TimeUnit.SECONDS);
+
+    if (queryThreads > queryExecutor.getMaximumPoolSize()) {
+      queryExecutor.setMaximumPoolSize(queryThreads);
+      queryExecutor.setCorePoolSize(queryThreads);
+    } else {
+      queryExecutor.setCorePoolSize(queryThreads);
+      queryExecutor.setMaximumPoolSize(queryThreads);
+    }
+
+    log.info("Settings: historyCacheSize={}, historyCacheNegativeTtl={}, queryThreads={}, queryTimeout={}",
+        historyCacheSize, historyCacheNegativeTtl, queryThreads, queryTimeout);
+  }
+
+  private void registerMetrics() {
+    metricsComponent = metricsService.registerComponent(EnergyMetrics.COMPONENT);
+    historyCacheFeature = metricsComponent.registerFeature(METRICS_FEATURE_HISTORY_CACHE);
+    metricsService.registerMetric(metricsComponent, historyCacheFeature, METRIC_CACHE_SIZE,
+        (Gauge<Long>) historyCache::size);
+    metricsService.registerMetric(metricsComponent, historyCacheFeature, METRIC_CACHE_HITS,
+        (Gauge<Long>) () -> historyCache.stats().hitCount());
+    metricsService.registerMetric(metricsComponent, historyCacheFeature, METRIC_CACHE_MISSES,
+        (Gauge<Long>) () -> historyCache.stats().missCount());
+    metricsService.registerMetric(metricsComponent, historyCacheFeature, METRIC_CACHE_EVICTIONS,
+        (Gauge<Long>) () -> historyCache.stats().evictionCount());
+    metricsService.registerMetric(metricsComponent, historyCacheFeature, METRIC_CACHE_NEGATIVE_HITS,
+        (Gauge<Long>) historyCache::negativeHitCount);
+    metricsService.registerMetric(metricsComponent, historyCacheFeature, METRIC_CACHE_BYPASSES,
+        (Gauge<Long>) historyCache::bypassCount);
+  }
+
+  private void removeMetrics() {
+    metricsService.removeMetric(metricsComponent, historyCacheFeature, METRIC_CACHE_SIZE);
+    metricsService.removeMetric(metricsComponent, historyCacheFeature, METRIC_CACHE_HITS);
+    metricsService.removeMetric(metricsComponent, historyCacheFeature, METRIC_CACHE_MISSES);
+    metricsService.removeMetric(metricsComponent, historyCacheFeature, METRIC_CACHE_EVICTIONS);
+    metricsService.removeMetric(metricsComponent, historyCacheFeature, METRIC_CACHE_NEGATIVE_HITS);
+    metricsService.removeMetric(metricsComponent, historyCacheFeature, METRIC_CACHE_BYPASSES);
+  }
+
   @Override
   public List<Energy> getEnergy() {
     checkPermission(DEVICE_READ);
@@ -102,7 +276,15 @@ public class FlexcommEnergyManager
     checkPermission(DEVICE_READ);
     checkNotNull(timestamp, TIMESTAMP_NULL);
 
-    return ImmutableList.copyOf(getEnergyEachDevice(timestamp));
+    return queryEnergy(timestamp).energy();
+  }
+
+  @Override
+  public EnergyQueryResult queryEnergy(Instant timestamp) {
+    checkPermission(DEVICE_READ);
+    checkNotNull(timestamp, TIMESTAMP_NULL);
+
+    return getEnergyEachEms(deviceEmsIds.emsIds(), timestamp);
   }
 
   @Override
@@ -118,7 +300,24 @@ public class FlexcommEnergyManager
     checkPermission(DEVICE_READ);
     checkNotNull(deviceId, DEVICE_ID_NULL);
 
-    return getEnergy(deviceService.getDevice(deviceId).annotations().value(EMSID_KEY));
+    String emsId = deviceEmsIds.emsId(deviceId);
+    return emsId != null ? store.getEnergy(emsId) : null;
+  }
+
+  @Override
+  public Map<DeviceId, Energy> getEnergies(Set<DeviceId> deviceIds) {
+    checkPermission(DEVICE_READ);
+    checkNotNull(deviceIds, DEVICE_ID_NULL);
+
+    ImmutableMap.Builder<DeviceId, Energy> res = ImmutableMap.builder();
+    for (DeviceId deviceId : deviceIds) {
+      String emsId = deviceEmsIds.emsId(deviceId);
+      Energy energy = emsId != null ? store.getEnergy(emsId) : null;
+      if (energy != null) {
+        res.put(deviceId, energy);
+      }
+    }
+    return res.build();
   }
 
   @Override
@@ -127,6 +326,24 @@ public class FlexcommEnergyManager
     checkArgument(!isNullOrEmpty(emsId), EMS_ID_EMPTY_NULL);
     checkNotNull(timestamp, TIMESTAMP_NULL);
 
+    return lookupEnergy(emsId, timestamp);
+  }
+
+  // Stored history first, the cache and the providers only for days the store does not hold
+  private Energy lookupEnergy(String emsId, Instant timestamp) {
+    Energy energy = store.getEnergy(emsId, timestamp);
+    if (energy != null) {
+      return energy;
+    }
+
+    Energy current = store.getEnergy(emsId);
+    if (current != null && EnergyDayKey.epochDay(current.timestamp()) == EnergyDayKey.epochDay(timestamp)) {
+      return current;
+    }
+    return historyCache.get(emsId, timestamp, this::requestEnergy);
+  }
+
+  private Energy requestEnergy(String emsId, Instant timestamp) {
     Energy res = null;
     for (ProviderId id : getProviders()) {
       FlexcommEnergyProvider provider = getProvider(id);
@@ -145,15 +362,58 @@ public class FlexcommEnergyManager
     checkNotNull(deviceId, DEVICE_ID_NULL);
     checkNotNull(timestamp, TIMESTAMP_NULL);
 
-    return getEnergy(deviceService.getDevice(deviceId).annotations().value(EMSID_KEY), timestamp);
+    String emsId = deviceEmsIds.emsId(deviceId);
+    return emsId != null ? getEnergy(emsId, timestamp) : null;
+  }
+
+  @Override
+  public List<EnergyPeriod> getEnergyPeriods(String emsId, Instant from, Instant to) {
+    checkPermission(DEVICE_READ);
+    checkArgument(!isNullOrEmpty(emsId), EMS_ID_EMPTY_NULL);
+    checkNotNull(from, TIMESTAMP_NULL);
+    checkNotNull(to, TIMESTAMP_NULL);
+    checkArgument(from.isBefore(to), RANGE_INVALID);
+
+    Instant last = to.minusNanos(1);
+    long firstDay = EnergyDayKey.epochDay(from);
+    long lastDay = EnergyDayKey.epochDay(last);
+    checkArgument(lastDay - firstDay < MAX_RANGE_DAYS, RANGE_TOO_LONG);
+
+    Map<Long, Energy> stored = Maps.newHashMap();
+    for (Energy energy : store.getEnergyHistory(emsId, from, last)) {
+      stored.put(EnergyDayKey.epochDay(energy.timestamp()), energy);
+    }
+    Energy current = store.getEnergy(emsId);
+    if (current != null) {
+      stored.putIfAbsent(EnergyDayKey.epochDay(current.timestamp()), current);
+    }
+
+    long today = EnergyDayKey.epochDay(Instant.now());
+    ImmutableList.Builder<EnergyPeriod> res = ImmutableList.builder();
+    for (long day = firstDay; day <= lastDay; ++day) {
+      Energy energy = stored.get(day);
+      if (energy == null && day <= today) {
+        energy = historyCache.get(emsId, Instant.ofEpochSecond(TimeUnit.DAYS.toSeconds(day)), this::requestEnergy);
+      }
+      if (energy == null) {
+        continue;
+      }
+
+      for (int slot = 0; slot < energy.slotCount(); ++slot) {
+        EnergyPeriod period = EnergyPeriodSnapshot.periodOf(energy, slot);
+        if (!period.timestamp().isBefore(from) && period.timestamp().isBefore(to)) {
+          res.add(period);
+        }
+      }
+    }
+    return res.build();
   }
 
   @Override
   public List<EnergyPeriod> getCurrentEnergyPeriod() {
     checkPermission(DEVICE_READ);
 
-    return store.getEnergy().stream().filter(Objects::nonNull).map(this::currentEnergyPeriod)
-        .collect(ImmutableList.toImmutableList());
+    return currentPeriodSnapshot().periods();
   }
 
   @Override
@@ -161,8 +421,7 @@ public class FlexcommEnergyManager
     checkPermission(DEVICE_READ);
     checkArgument(!isNullOrEmpty(emsId), EMS_ID_EMPTY_NULL);
 
-    Energy e = store.getEnergy(emsId);
-    return e != null ? currentEnergyPeriod(e) : null;
+    return currentPeriodSnapshot().period(emsId);
   }
 
   @Override
@@ -170,37 +429,185 @@ public class FlexcommEnergyManager
     checkPermission(DEVICE_READ);
     checkNotNull(deviceId, DEVICE_ID_NULL);
 
-    return getCurrentEnergyPeriod(deviceService.getDevice(deviceId).annotations().value(EMSID_KEY));
+    String emsId = deviceEmsIds.emsId(deviceId);
+    return emsId != null ? currentPeriodSnapshot().period(emsId) : null;
   }
 
-  private Set<Energy> getEnergyEachDevice(Instant timestamp) {
-    Set<Energy> res = new HashSet<>();
+  @Override
+  public Map<DeviceId, EnergyPeriod> getCurrentEnergyPeriods(Set<DeviceId> deviceIds) {
+    checkPermission(DEVICE_READ);
+    checkNotNull(deviceIds, DEVICE_ID_NULL);
+
+    EnergyPeriodSnapshot snapshot = currentPeriodSnapshot();
+    ImmutableMap.Builder<DeviceId, EnergyPeriod> res = ImmutableMap.builder();
+    for (DeviceId deviceId : deviceIds) {
+      String emsId = deviceEmsIds.emsId(deviceId);
+      EnergyPeriod period = emsId != null ? snapshot.period(emsId) : null;
+      if (period != null) {
+        res.put(deviceId, period);
+      }
+    }
+    return res.build();
+  }
 
-    for (Device d : deviceService.getDevices()) {
-      String emsId = d.annotations().value(EMSID_KEY);
-      if (!isNullOrEmpty(emsId)) {
-        Energy e = getEnergy(emsId, timestamp);
-        if (e != null) {
-          res.add(e);
-        }
+  @Override
+  public EnergyAggregate getEnergyAggregate() {
+    checkPermission(DEVICE_READ);
+
+    return store.getEnergyAggregate();
+  }
+
+  @Override
+  public EnergyAggregate getEnergyAggregate(Set<String> emsIds) {
+    checkPermission(DEVICE_READ);
+    checkNotNull(emsIds, EMS_ID_EMPTY_NULL);
+
+    List<Energy> energies = new ArrayList<>(emsIds.size());
+    for (String emsId : emsIds) {
+      Energy energy = store.getEnergy(emsId);
+      if (energy != null) {
+        energies.add(energy);
       }
     }
+    return EnergyAggregator.aggregate(energies);
+  }
 
-    return res;
+  private void updateDeviceEmsId(Device device) {
+    String emsId = device.annotations().value(EMSID_KEY);
+    if (!isNullOrEmpty(emsId)) {
+      deviceEmsIds.put(device.id(), emsId);
+    } else {
+      deviceEmsIds.remove(device.id());
+    }
   }
 
-  private EnergyPeriod currentEnergyPeriod(Energy energy) {
-    ZonedDateTime currentTime = Instant.now().atZone(ZoneOffset.UTC);
-    int index = (currentTime.getMinute() / 15) + currentTime.getHour() * 4;
+  private EnergyQueryResult getEnergyEachEms(Set<String> emsIds, Instant timestamp) {
+    List<String> queried = ImmutableList.copyOf(emsIds);
+    List<Callable<Energy>> tasks = new ArrayList<>(queried.size());
+    for (String emsId : queried) {
+      tasks.add(() -> lookupEnergy(emsId, timestamp));
+    }
+
+    List<Future<Energy>> futures;
+    try {
+      futures = queryExecutor.invokeAll(tasks, queryTimeout, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new EnergyQueryResult(ImmutableList.of(), queried);
+    }
+
+    List<Energy> energy = new ArrayList<>(queried.size());
+    List<String> failed = new ArrayList<>();
+    for (int i = 0; i < futures.size(); ++i) {
+      Energy e = null;
+      try {
+        e = futures.get(i).get();
+      } catch (CancellationException | ExecutionException ex) {
+        log.debug("Energy query for emsId {} did not complete: {}", queried.get(i), ex.getMessage());
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+
+      if (e != null) {
+        energy.add(e);
+      } else {
+        failed.add(queried.get(i));
+      }
+    }
+
+    if (!failed.isEmpty()) {
+      log.warn("Energy query for {} returned no data for {} of {} EMS", timestamp, failed.size(), queried.size());
+    }
+    return new EnergyQueryResult(energy, failed);
+  }
 
-    EnergyPeriod.Builder builder = DefaultEnergyPeriod.builder()
-        .setEmsId(energy.emsId())
-        .setTimestamp(energy.timestamp().plus(index * 15, ChronoUnit.MINUTES))
-        .setFlexibility(energy.flexibilityArray().get(index))
-        .setEstimate(energy.estimateArray().get(index))
-        .setAnnotations(energy.annotations());
+  private EnergyPeriodSnapshot currentPeriodSnapshot() {
+    EnergyPeriodSnapshot snapshot = periodSnapshot;
+    Instant now = Instant.now();
+    // Covers reads racing the tick right at a slot boundary
+    return snapshot.isCurrent(now) ? snapshot : refreshPeriodSnapshot(now);
+  }
 
-    return builder.build();
+  private synchronized EnergyPeriodSnapshot refreshPeriodSnapshot(Instant now) {
+    long epochSlot = EnergyPeriodSnapshot.epochSlot(now);
+    if (periodSnapshot.epochSlot() != epochSlot) {
+      endedPeriodSnapshot = periodSnapshot;
+      periodSnapshot = EnergyPeriodSnapshot.of(epochSlot, store.getEnergy());
+    }
+    return periodSnapshot;
+  }
+
+  // Returns the energy of the EMS whose period value changed with the slot,
+  // also when a read already moved the snapshot to the new slot
+  private synchronized List<Energy> rollPeriodSnapshot(Instant now) {
+    EnergyPeriodSnapshot current = refreshPeriodSnapshot(now);
+    EnergyPeriodSnapshot ended = endedPeriodSnapshot;
+    endedPeriodSnapshot = null;
+    if (ended == null) {
+      return ImmutableList.of();
+    }
+
+    List<Energy> changed = new ArrayList<>();
+    for (String emsId : current.valueChanges(ended)) {
+      Energy energy = store.getEnergy(emsId);
+      if (energy != null) {
+        changed.add(energy);
+      }
+    }
+    return changed;
+  }
+
+  private synchronized boolean updatePeriodSnapshot(Energy energy) {
+    EnergyPeriod previous = periodSnapshot.period(energy.emsId());
+    periodSnapshot = periodSnapshot.with(energy);
+    return !EnergyPeriodSnapshot.samePeriod(previous, periodSnapshot.period(energy.emsId()));
+  }
+
+  // Returns the energy of the EMS whose current period changed
+  private synchronized List<Energy> updatePeriodSnapshot(Set<String> emsIds) {
+    List<Energy> energies = new ArrayList<>(emsIds.size());
+    for (String emsId : emsIds) {
+      Energy energy = store.getEnergy(emsId);
+      if (energy != null) {
+        energies.add(energy);
+      }
+    }
+
+    EnergyPeriodSnapshot previous = periodSnapshot;
+    periodSnapshot = previous.with(energies);
+    List<Energy> changed = new ArrayList<>();
+    for (Energy energy : energies) {
+      if (!EnergyPeriodSnapshot.samePeriod(previous.period(energy.emsId()), periodSnapshot.period(energy.emsId()))) {
+        changed.add(energy);
+      }
+    }
+    return changed;
+  }
+
+  private synchronized void removePeriodSnapshot(Energy energy) {
+    if (energy != null) {
+      periodSnapshot = periodSnapshot.without(energy.emsId());
+    } else {
+      periodSnapshot = EnergyPeriodSnapshot.of(periodSnapshot.epochSlot(), store.getEnergy());
+    }
+  }
+
+  private void schedulePeriodTick() {
+    long next = EnergyPeriodSnapshot.epochSlot(Instant.now()) + 1;
+    long delay = Instant.now().until(EnergyPeriodSnapshot.slotStart(next), ChronoUnit.MILLIS);
+    periodExecutor.schedule(this::periodTick, Math.max(0, delay), TimeUnit.MILLISECONDS);
+  }
+
+  private void periodTick() {
+    try {
+      for (Energy energy : rollPeriodSnapshot(Instant.now())) {
+        post(new FlexcommEnergyEvent(ENERGY_PERIOD_CHANGED, energy));
+      }
+    } catch (Exception e) {
+      log.warn("Failed to refresh current energy periods", e);
+    } finally {
+      schedulePeriodTick();
+    }
   }
 
   @Override
@@ -208,11 +615,52 @@ public class FlexcommEnergyManager
     return new InternalFlexcommEnergyProviderService(provider);
   }
 
+  private class InternalDeviceListener implements DeviceListener {
+
+    @Override
+    public void event(DeviceEvent event) {
+      switch (event.type()) {
+        case DEVICE_ADDED:
+        case DEVICE_UPDATED:
+          updateDeviceEmsId(event.subject());
+          break;
+        case DEVICE_REMOVED:
+          deviceEmsIds.remove(event.subject().id());
+          break;
+        default:
+          break;
+      }
+    }
+
+  }
+
   private class InternalEnergyStoreDelegate implements FlexcommEnergyStoreDelegate {
 
     @Override
     public void notify(FlexcommEnergyEvent event) {
-      post(event);
+      switch (event.type()) {
+        case ENERGY_UPDATED:
+          boolean periodChanged = updatePeriodSnapshot(event.subject());
+          post(event);
+          if (periodChanged) {
+            post(new FlexcommEnergyEvent(ENERGY_PERIOD_CHANGED, event.subject()));
+          }
+          break;
+        case ENERGY_BATCH_UPDATED:
+          List<Energy> periodsChanged = updatePeriodSnapshot(event.emsIds());
+          post(event);
+          for (Energy energy : periodsChanged) {
+            post(new FlexcommEnergyEvent(ENERGY_PERIOD_CHANGED, energy));
+          }
+          break;
+        case ENERGY_REMOVED:
+          removePeriodSnapshot(event.subject());
+          post(event);
+          break;
+        default:
+          post(event);
+          break;
+      }
     }
 
   }
@@ -230,8 +678,19 @@ public class FlexcommEnergyManager
       checkNotNull(energy, "Energy data cannot be null");
       checkValidity();
 
-      FlexcommEnergyEvent event = store.updateEnergy(emsId, energy);
-      post(event);
+      store.updateEnergy(emsId, energy);
+    }
+
+    @Override
+    public void updateEnergy(Map<String, Energy> energies) {
+      checkNotNull(energies, "Energy data cannot be null");
+      energies.forEach((emsId, energy) -> {
+        checkArgument(!isNullOrEmpty(emsId), EMS_ID_EMPTY_NULL);
+        checkNotNull(energy, "Energy data cannot be null");
+      });
+      checkValidity();
+
+      store.updateEnergy(energies);
     }
 
     @Override
@@ -240,7 +699,9 @@ public class FlexcommEnergyManager
       checkValidity();
 
       FlexcommEnergyEvent event = store.removeEnergy(emsId);
-      post(event);
+      if (event != null) {
+        post(event);
+      }
     }
   }
 
@@ -18,9 +18,72 @@ public final class OsgiPropertyConstants {
   public static final String HTTP_PASSWORD = "energyHTTPPassword";
   public static final String HTTP_PASSWORD_DEFAULT = "";
 
+  public static final String HTTP_POOL_SIZE = "energyHttpPoolSize";
+  public static final int HTTP_POOL_SIZE_DEFAULT = 32;
+
+  public static final String HTTP_KEEP_ALIVE = "energyHttpKeepAlive";
+  public static final long HTTP_KEEP_ALIVE_DEFAULT = 60;
+
+  public static final String HTTP_CONNECT_TIMEOUT = "energyHttpConnectTimeout";
+  public static final int HTTP_CONNECT_TIMEOUT_DEFAULT = 5000;
+
+  public static final String HTTP_READ_TIMEOUT = "energyHttpReadTimeout";
+  public static final int HTTP_READ_TIMEOUT_DEFAULT = 30000;
+
+  public static final String HTTP_POOL_TIMEOUT = "energyHttpPoolTimeout";
+  public static final int HTTP_POOL_TIMEOUT_DEFAULT = 10000;
+
   public static final String UPDATE_RETRIES = "energyUpdateRetries";
   public static final int UPDATE_RETRIES_DEFAULT = 10;
 
   public static final String UPDATE_RETRIES_DELAY = "energyUpdateRetriesDelay";
   public static final long UPDATE_RETRIES_DELAY_DEFAULT = 10;
+
+  public static final String RETRY_MAX_DELAY = "energyRetryMaxDelay";
+  public static final long RETRY_MAX_DELAY_DEFAULT = 600;
+
+  public static final String CIRCUIT_FAILURE_THRESHOLD = "energyCircuitFailureThreshold";
+  public static final int CIRCUIT_FAILURE_THRESHOLD_DEFAULT = 5;
+
+  public static final String CIRCUIT_OPEN_TIME = "energyCircuitOpenTime";
+  public static final long CIRCUIT_OPEN_TIME_DEFAULT = 300;
+
+  public static final String MAX_CONCURRENCY = "energyMaxConcurrency";
+  public static final int MAX_CONCURRENCY_DEFAULT = 32;
+
+  public static final String BATCH_SIZE = "energyBatchSize";
+  public static final int BATCH_SIZE_DEFAULT = 1;
+
+  public static final String POLL_OFFSET = "energyPollOffset";
+  public static final long POLL_OFFSET_DEFAULT = 300;
+
+  public static final String POLL_WINDOW = "energyPollWindow";
+  public static final long POLL_WINDOW_DEFAULT = 3600;
+
+  public static final String POLL_RATE = "energyPollRate";
+  public static final int POLL_RATE_DEFAULT = 10;
+
+  public static final String WARMUP_TIMEOUT = "energyWarmupTimeout";
+  public static final long WARMUP_TIMEOUT_DEFAULT = 120;
+
+  public static final String HISTORY_CACHE_SIZE = "energyHistoryCacheSize";
+  public static final int HISTORY_CACHE_SIZE_DEFAULT = 10000;
+
+  public static final String HISTORY_CACHE_NEGATIVE_TTL = "energyHistoryCacheNegativeTtl";
+  public static final long HISTORY_CACHE_NEGATIVE_TTL_DEFAULT = 300;
+
+  public static final String QUERY_THREADS = "energyQueryThreads";
+  public static final int QUERY_THREADS_DEFAULT = 8;
+
+  public static final String QUERY_TIMEOUT = "energyQueryTimeout";
+  public static final long QUERY_TIMEOUT_DEFAULT = 30;
+
+  public static final String HISTORY_RETENTION_DAYS = "energyHistoryRetentionDays";
+  public static final int HISTORY_RETENTION_DAYS_DEFAULT = 7;
+
+  public static final String SNAPSHOT_PATH = "energySnapshotPath";
+  public static final String SNAPSHOT_PATH_DEFAULT = "data/flexcomm-energy.snapshot";
+
+  public static final String SNAPSHOT_INTERVAL = "energySnapshotInterval";
+  public static final long SNAPSHOT_INTERVAL_DEFAULT = 300;
 }
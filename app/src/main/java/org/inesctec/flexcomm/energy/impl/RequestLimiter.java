@@ -0,0 +1,122 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of asynchronous requests in flight without blocking the
+ * submitting thread. Tasks exceeding the bound are queued and started as soon
+ * as a running one completes. A task whose future is completed or cancelled
+ * while still queued is never started.
+ */
+final class RequestLimiter {
+
+  private static final class Task {
+    private final CompletableFuture<?> result;
+    private final Runnable start;
+
+    private Task(CompletableFuture<?> result, Runnable start) {
+      this.result = result;
+      this.start = start;
+    }
+  }
+
+  private final Queue<Task> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger drainRequests = new AtomicInteger();
+  private volatile int maxConcurrency;
+
+  RequestLimiter(int maxConcurrency) {
+    setMaxConcurrency(maxConcurrency);
+  }
+
+  void setMaxConcurrency(int maxConcurrency) {
+    checkArgument(maxConcurrency > 0, "Max concurrency must be positive");
+    this.maxConcurrency = maxConcurrency;
+    drain();
+  }
+
+  int maxConcurrency() {
+    return maxConcurrency;
+  }
+
+  int inFlight() {
+    return inFlight.get();
+  }
+
+  int pending() {
+    return pending.size();
+  }
+
+  <T> CompletableFuture<T> submit(Supplier<? extends CompletableFuture<T>> task) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    pending.add(new Task(result, () -> {
+      // Given up on while queued, e.g. cancelled after a timeout.
+      if (result.isDone()) {
+        inFlight.decrementAndGet();
+        return;
+      }
+
+      CompletableFuture<T> future;
+      try {
+        future = task.get();
+      } catch (RuntimeException e) {
+        future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+      }
+      future.whenComplete((value, error) -> {
+        inFlight.decrementAndGet();
+        drain();
+        if (error != null) {
+          result.completeExceptionally(error);
+        } else {
+          result.complete(value);
+        }
+      });
+    }));
+    drain();
+    return result;
+  }
+
+  /**
+   * Cancels every queued task, none of them is started afterwards. Tasks
+   * already running are left to complete.
+   *
+   * @return number of tasks cancelled
+   */
+  int cancelPending() {
+    int cancelled = 0;
+    Task task;
+    while ((task = pending.poll()) != null) {
+      task.result.cancel(false);
+      ++cancelled;
+    }
+    return cancelled;
+  }
+
+  // Only one thread drains at a time; completions racing with it just ask for
+  // another pass, which also keeps synchronous completions from recursing.
+  private void drain() {
+    if (drainRequests.getAndIncrement() != 0) {
+      return;
+    }
+
+    int missed = 1;
+    do {
+      while (inFlight.get() < maxConcurrency) {
+        Task next = pending.poll();
+        if (next == null) {
+          break;
+        }
+        inFlight.incrementAndGet();
+        next.start.run();
+      }
+      missed = drainRequests.addAndGet(-missed);
+    } while (missed != 0);
+  }
+}
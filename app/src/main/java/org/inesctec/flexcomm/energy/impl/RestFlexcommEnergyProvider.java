@@ -1,11 +1,38 @@
 package org.inesctec.flexcomm.energy.impl;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.BATCH_SIZE;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.BATCH_SIZE_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.CIRCUIT_FAILURE_THRESHOLD;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.CIRCUIT_FAILURE_THRESHOLD_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.CIRCUIT_OPEN_TIME;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.CIRCUIT_OPEN_TIME_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_CONNECT_TIMEOUT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_CONNECT_TIMEOUT_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_KEEP_ALIVE;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_KEEP_ALIVE_DEFAULT;
 import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_PASSWORD;
 import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_PASSWORD_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_POOL_SIZE;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_POOL_SIZE_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_POOL_TIMEOUT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_POOL_TIMEOUT_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_READ_TIMEOUT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_READ_TIMEOUT_DEFAULT;
 import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_USERNAME;
 import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.HTTP_USERNAME_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.MAX_CONCURRENCY;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.MAX_CONCURRENCY_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.POLL_OFFSET;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.POLL_OFFSET_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.POLL_RATE;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.POLL_RATE_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.POLL_WINDOW;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.POLL_WINDOW_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.RETRY_MAX_DELAY;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.RETRY_MAX_DELAY_DEFAULT;
 import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.UPDATE_RETRIES;
 import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.UPDATE_RETRIES_DEFAULT;
 import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.UPDATE_RETRIES_DELAY;
@@ -14,44 +41,64 @@ import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.URI_AUTHOR
 import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.URI_AUTHORITY_DEFAULT;
 import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.URI_PATH;
 import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.URI_PATH_DEFAULT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.WARMUP_TIMEOUT;
+import static org.inesctec.flexcomm.energy.impl.OsgiPropertyConstants.WARMUP_TIMEOUT_DEFAULT;
 import static org.onlab.util.Tools.get;
 import static org.onlab.util.Tools.groupedThreads;
 import static org.slf4j.LoggerFactory.getLogger;
 
-import java.io.InputStream;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
-import javax.ws.rs.ProcessingException;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
 
-import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
+import org.apache.http.pool.PoolStats;
 import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyMetrics;
+import org.inesctec.flexcomm.energy.api.EnergyPoll;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyProvider;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyProviderRegistry;
+import org.inesctec.flexcomm.energy.api.FlexcommEnergyPollingService;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyProviderService;
+import org.inesctec.flexcomm.energy.api.FlexcommEnergyService;
 import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
 import org.inesctec.flexcomm.energy.impl.objects.EnergyMessage;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
 import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.net.Device;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.device.DeviceEvent;
 import org.onosproject.net.device.DeviceListener;
 import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.intent.WorkPartitionEvent;
+import org.onosproject.net.intent.WorkPartitionEventListener;
+import org.onosproject.net.intent.WorkPartitionService;
 import org.onosproject.net.provider.AbstractProvider;
 import org.onosproject.net.provider.ProviderId;
 import org.osgi.service.component.ComponentContext;
@@ -63,25 +110,75 @@ import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.slf4j.Logger;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
-@Component(immediate = true, property = {
+@Component(immediate = true, service = FlexcommEnergyPollingService.class, property = {
     URI_AUTHORITY + "=" + URI_AUTHORITY_DEFAULT,
     URI_PATH + "=" + URI_PATH_DEFAULT,
     HTTP_USERNAME + "=" + HTTP_USERNAME_DEFAULT,
     HTTP_PASSWORD + "=" + HTTP_PASSWORD_DEFAULT,
+    HTTP_POOL_SIZE + ":Integer=" + HTTP_POOL_SIZE_DEFAULT,
+    HTTP_KEEP_ALIVE + ":Long=" + HTTP_KEEP_ALIVE_DEFAULT,
+    HTTP_CONNECT_TIMEOUT + ":Integer=" + HTTP_CONNECT_TIMEOUT_DEFAULT,
+    HTTP_READ_TIMEOUT + ":Integer=" + HTTP_READ_TIMEOUT_DEFAULT,
+    HTTP_POOL_TIMEOUT + ":Integer=" + HTTP_POOL_TIMEOUT_DEFAULT,
     UPDATE_RETRIES + ":Integer=" + UPDATE_RETRIES_DEFAULT,
     UPDATE_RETRIES_DELAY + ":Long=" + UPDATE_RETRIES_DELAY_DEFAULT,
+    RETRY_MAX_DELAY + ":Long=" + RETRY_MAX_DELAY_DEFAULT,
+    CIRCUIT_FAILURE_THRESHOLD + ":Integer=" + CIRCUIT_FAILURE_THRESHOLD_DEFAULT,
+    CIRCUIT_OPEN_TIME + ":Long=" + CIRCUIT_OPEN_TIME_DEFAULT,
+    MAX_CONCURRENCY + ":Integer=" + MAX_CONCURRENCY_DEFAULT,
+    BATCH_SIZE + ":Integer=" + BATCH_SIZE_DEFAULT,
+    POLL_OFFSET + ":Long=" + POLL_OFFSET_DEFAULT,
+    POLL_WINDOW + ":Long=" + POLL_WINDOW_DEFAULT,
+    POLL_RATE + ":Integer=" + POLL_RATE_DEFAULT,
+    WARMUP_TIMEOUT + ":Long=" + WARMUP_TIMEOUT_DEFAULT,
 })
-public class RestFlexcommEnergyProvider extends AbstractProvider implements FlexcommEnergyProvider {
+public class RestFlexcommEnergyProvider extends AbstractProvider
+    implements FlexcommEnergyProvider, FlexcommEnergyPollingService {
 
   private static final String EMSID_KEY = "emsId";
   private static final String TIMESTAMP_KEY = "timestamp";
-  private static final DateFormat REQUEST_TIMESTAMP_FORMATTER = new SimpleDateFormat("yyyy-MM-dd");
-  private static final DateFormat RESPONSE_TIMESTAMP_FORMATTER = new SimpleDateFormat("dd/MM/yyyy hh:mm a");
   private static final int NUM_THREADS = 4;
+  private static final long TERMINATION_TIMEOUT = 5;
+
+  private static final Function<String, Long> EMS_HASHER = emsId -> (long) emsId.hashCode();
+
+  // Compared by identity, marks a response matching what was last received
+  private static final List<EnergyMessage> UNCHANGED = Collections.unmodifiableList(new ArrayList<>());
+
+  private static final String METRICS_FEATURE_UPSTREAM = "Upstream";
+  private static final String METRIC_OPEN_CIRCUITS = "openCircuits";
+  private static final String METRIC_HOST_CIRCUIT_OPEN = "hostCircuitOpen";
+  private static final String METRIC_PENDING_RETRIES = "pendingRetries";
+  private static final String METRIC_RESPONSES_OK = "responsesOk";
+  private static final String METRIC_RESPONSES_NOT_MODIFIED = "responsesNotModified";
+  private static final String METRIC_RESPONSES_UNCHANGED = "responsesUnchanged";
+  private static final String METRIC_HTTP_LATENCY = "httpLatency";
+  private static final String METRIC_PARSE_TIME = "parseTime";
+  private static final String METRIC_REQUEST_FAILURES = "requestFailures";
+  private static final String METRIC_RETRIES = "retries";
+  private static final String METRIC_OUTDATED_RESPONSES = "outdatedResponses";
+  private static final String METRIC_REQUESTS_IN_FLIGHT = "requestsInFlight";
+  private static final String METRIC_REQUESTS_QUEUED = "requestsQueued";
+  private static final String METRICS_FEATURE_POLLING = "Polling";
+  private static final String METRIC_CYCLE_DURATION = "cycleDuration";
+  private static final String METRIC_EMS_UPDATED = "emsUpdated";
+  private static final String METRICS_FEATURE_HTTP_POOL = "HttpPool";
+  private static final String METRIC_POOL_LEASED = "leased";
+  private static final String METRIC_POOL_AVAILABLE = "available";
+  private static final String METRIC_POOL_PENDING = "pending";
+  private static final String METRIC_POOL_MAX = "max";
+  private static final String METRICS_FEATURE_WARMUP = "Warmup";
+  private static final String METRIC_WARMUP_DURATION = "duration";
+  private static final String METRIC_WARMUP_READY = "ready";
 
   private final Logger log = getLogger(getClass());
 
@@ -94,6 +191,15 @@ public class RestFlexcommEnergyProvider extends AbstractProvider implements Flex
   @Reference(cardinality = ReferenceCardinality.MANDATORY)
   protected FlexcommEnergyProviderRegistry providerRegistry;
 
+  @Reference(cardinality = ReferenceCardinality.MANDATORY)
+  protected MetricsService metricsService;
+
+  @Reference(cardinality = ReferenceCardinality.MANDATORY)
+  protected WorkPartitionService workPartitionService;
+
+  @Reference(cardinality = ReferenceCardinality.MANDATORY)
+  protected FlexcommEnergyService energyService;
+
   private String energyURIAuthority = URI_AUTHORITY_DEFAULT;
 
   private String energyURIPath = URI_PATH_DEFAULT;
@@ -102,21 +208,96 @@ public class RestFlexcommEnergyProvider extends AbstractProvider implements Flex
 
   private String energyHTTPPassword = HTTP_PASSWORD_DEFAULT;
 
+  private int energyHttpPoolSize = HTTP_POOL_SIZE_DEFAULT;
+
+  private long energyHttpKeepAlive = HTTP_KEEP_ALIVE_DEFAULT;
+
+  private int energyHttpConnectTimeout = HTTP_CONNECT_TIMEOUT_DEFAULT;
+
+  private int energyHttpReadTimeout = HTTP_READ_TIMEOUT_DEFAULT;
+
+  private int energyHttpPoolTimeout = HTTP_POOL_TIMEOUT_DEFAULT;
+
   private int energyUpdateRetries = UPDATE_RETRIES_DEFAULT;
 
   private long energyUpdateRetriesDelay = UPDATE_RETRIES_DELAY_DEFAULT;
 
+  private long energyRetryMaxDelay = RETRY_MAX_DELAY_DEFAULT;
+
+  private int energyCircuitFailureThreshold = CIRCUIT_FAILURE_THRESHOLD_DEFAULT;
+
+  private long energyCircuitOpenTime = CIRCUIT_OPEN_TIME_DEFAULT;
+
+  private int energyMaxConcurrency = MAX_CONCURRENCY_DEFAULT;
+
+  private int energyBatchSize = BATCH_SIZE_DEFAULT;
+
+  private long energyPollOffset = POLL_OFFSET_DEFAULT;
+
+  private long energyPollWindow = POLL_WINDOW_DEFAULT;
+
+  private int energyPollRate = POLL_RATE_DEFAULT;
+
+  private long energyWarmupTimeout = WARMUP_TIMEOUT_DEFAULT;
+
   private FlexcommEnergyProviderService providerService;
 
   private final InternalEnergyProvider listener = new InternalEnergyProvider();
 
-  private Client client;
+  private final WorkPartitionEventListener partitionListener = new InternalWorkPartitionListener();
+
+  private volatile UpstreamConnector connector;
 
-  private WebTarget target;
+  private List<Object> connectorSettings;
+
+  private volatile WebTarget target;
 
   private ScheduledExecutorService energyExecutor;
 
-  private Map<DeviceId, String> deviceEmsIds = Maps.newConcurrentMap();
+  private ExecutorService httpExecutor;
+
+  private final RequestLimiter requestLimiter = new RequestLimiter(MAX_CONCURRENCY_DEFAULT);
+
+  private final DeviceEmsIndex deviceEmsIds = new DeviceEmsIndex();
+
+  private final EnergyPollScheduler pollScheduler = new EnergyPollScheduler(POLL_OFFSET_DEFAULT,
+      POLL_WINDOW_DEFAULT, TimeUnit.SECONDS, POLL_RATE_DEFAULT);
+
+  private final UpstreamGuard upstreamGuard = new UpstreamGuard(UPDATE_RETRIES_DELAY_DEFAULT,
+      RETRY_MAX_DELAY_DEFAULT, UPDATE_RETRIES_DEFAULT, CIRCUIT_FAILURE_THRESHOLD_DEFAULT,
+      CIRCUIT_OPEN_TIME_DEFAULT, TimeUnit.SECONDS);
+
+  private final UpstreamValidators upstreamValidators = new UpstreamValidators();
+
+  private MetricsComponent metricsComponent;
+
+  private MetricsFeature upstreamFeature;
+
+  private MetricsFeature httpPoolFeature;
+
+  private MetricsFeature warmupFeature;
+
+  private MetricsFeature pollingFeature;
+
+  private Timer httpLatency;
+
+  private Timer parseTime;
+
+  private Meter requestFailures;
+
+  private Meter retries;
+
+  private Meter outdatedResponses;
+
+  private Timer cycleDuration;
+
+  private Meter emsUpdated;
+
+  private final AtomicBoolean ready = new AtomicBoolean();
+
+  private volatile long warmupStart;
+
+  private volatile long warmupMillis;
 
   public RestFlexcommEnergyProvider() {
     super(new ProviderId("rest", "org.inesctec.provider.energy"));
@@ -128,17 +309,21 @@ public class RestFlexcommEnergyProvider extends AbstractProvider implements Flex
 
     energyExecutor = newScheduledThreadPool(NUM_THREADS,
         groupedThreads("inesctec/flexcomm/energy-client", "energy-updater", log));
+    httpExecutor = newCachedThreadPool(groupedThreads("inesctec/flexcomm/energy-client", "energy-http-%d", log));
+
+    modified(context);
 
     providerService = providerRegistry.register(this);
 
-    deviceService.addListener(listener);
+    registerMetrics();
 
-    client = ClientBuilder.newClient();
-    target = client.target("http://" + energyURIAuthority + "/").path(energyURIPath);
+    deviceService.addListener(listener);
+    workPartitionService.addListener(partitionListener);
 
+    warmupStart = System.nanoTime();
+    energyExecutor.execute(this::warmUp);
     schedulePolling();
-
-    modified(context);
+    energyExecutor.scheduleWithFixedDelay(this::evictIdleConnections, 30, 30, TimeUnit.SECONDS);
 
     log.info("Started");
   }
@@ -147,17 +332,35 @@ public class RestFlexcommEnergyProvider extends AbstractProvider implements Flex
   public void deactivate(ComponentContext context) {
     cfgService.unregisterProperties(getClass(), false);
 
-    energyExecutor.shutdownNow();
-    energyExecutor = null;
+    workPartitionService.removeListener(partitionListener);
 
     listener.disable();
 
     deviceService.removeListener(listener);
 
+    // Queued requests never start, running ones are aborted with the client and
+    // their completions drained before the state they use is released
+    requestLimiter.cancelPending();
+    energyExecutor.shutdownNow();
+    connector.close();
+    httpExecutor.shutdownNow();
+    awaitTermination(energyExecutor);
+    awaitTermination(httpExecutor);
+    energyExecutor = null;
+    connector = null;
+    connectorSettings = null;
+    httpExecutor = null;
+
     providerRegistry.unregister(this);
     providerService = null;
 
+    removeMetrics();
+
     deviceEmsIds.clear();
+    pollScheduler.clear();
+    upstreamGuard.clear();
+    upstreamValidators.clear();
+    ready.set(false);
 
     log.info("Stopped");
   }
@@ -189,6 +392,31 @@ public class RestFlexcommEnergyProvider extends AbstractProvider implements Flex
     }
 
     try {
+      s = get(properties, HTTP_POOL_SIZE);
+      if (!isNullOrEmpty(s)) {
+        energyHttpPoolSize = Math.max(1, Integer.parseInt(s.trim()));
+      }
+
+      s = get(properties, HTTP_KEEP_ALIVE);
+      if (!isNullOrEmpty(s)) {
+        energyHttpKeepAlive = Math.max(1, Long.parseLong(s.trim()));
+      }
+
+      s = get(properties, HTTP_CONNECT_TIMEOUT);
+      if (!isNullOrEmpty(s)) {
+        energyHttpConnectTimeout = Math.max(0, Integer.parseInt(s.trim()));
+      }
+
+      s = get(properties, HTTP_READ_TIMEOUT);
+      if (!isNullOrEmpty(s)) {
+        energyHttpReadTimeout = Math.max(0, Integer.parseInt(s.trim()));
+      }
+
+      s = get(properties, HTTP_POOL_TIMEOUT);
+      if (!isNullOrEmpty(s)) {
+        energyHttpPoolTimeout = Math.max(0, Integer.parseInt(s.trim()));
+      }
+
       s = get(properties, UPDATE_RETRIES);
       if (!isNullOrEmpty(s)) {
         energyUpdateRetries = Integer.parseInt(s.trim());
@@ -198,81 +426,614 @@ public class RestFlexcommEnergyProvider extends AbstractProvider implements Flex
       if (!isNullOrEmpty(s)) {
         energyUpdateRetriesDelay = Long.parseLong(s.trim());
       }
+
+      s = get(properties, RETRY_MAX_DELAY);
+      if (!isNullOrEmpty(s)) {
+        energyRetryMaxDelay = Math.max(0, Long.parseLong(s.trim()));
+      }
+
+      s = get(properties, CIRCUIT_FAILURE_THRESHOLD);
+      if (!isNullOrEmpty(s)) {
+        energyCircuitFailureThreshold = Math.max(1, Integer.parseInt(s.trim()));
+      }
+
+      s = get(properties, CIRCUIT_OPEN_TIME);
+      if (!isNullOrEmpty(s)) {
+        energyCircuitOpenTime = Math.max(0, Long.parseLong(s.trim()));
+      }
+
+      s = get(properties, MAX_CONCURRENCY);
+      if (!isNullOrEmpty(s)) {
+        energyMaxConcurrency = Math.max(1, Integer.parseInt(s.trim()));
+      }
+
+      s = get(properties, BATCH_SIZE);
+      if (!isNullOrEmpty(s)) {
+        energyBatchSize = Math.max(1, Integer.parseInt(s.trim()));
+      }
+
+      s = get(properties, POLL_OFFSET);
+      if (!isNullOrEmpty(s)) {
+        energyPollOffset = Math.max(0, Long.parseLong(s.trim()));
+      }
+
+      s = get(properties, POLL_WINDOW);
+      if (!isNullOrEmpty(s)) {
+        energyPollWindow = Math.max(0, Long.parseLong(s.trim()));
+      }
+
+      s = get(properties, POLL_RATE);
+      if (!isNullOrEmpty(s)) {
+        energyPollRate = Math.max(1, Integer.parseInt(s.trim()));
+      }
+
+      s = get(properties, WARMUP_TIMEOUT);
+      if (!isNullOrEmpty(s)) {
+        energyWarmupTimeout = Math.max(0, Long.parseLong(s.trim()));
+      }
     } catch (NumberFormatException | ClassCastException e) {
       // do nothing
     }
 
-    target = client.target("http://" + energyURIAuthority + "/").path(energyURIPath);
-    if (!energyHTTPUsername.isEmpty() && !energyHTTPPassword.isEmpty()) {
-      HttpAuthenticationFeature auth = HttpAuthenticationFeature.basic(energyHTTPUsername, energyHTTPPassword);
-      target.register(auth);
+    updateConnector();
+    requestLimiter.setMaxConcurrency(energyMaxConcurrency);
+    upstreamGuard.configure(energyUpdateRetriesDelay, energyRetryMaxDelay, energyUpdateRetries,
+        energyCircuitFailureThreshold, energyCircuitOpenTime, TimeUnit.SECONDS);
+
+    // The window has to close before the next day starts
+    long day = TimeUnit.DAYS.toSeconds(1);
+    energyPollOffset = Math.min(energyPollOffset, day - 1);
+    energyPollWindow = Math.min(energyPollWindow, day - energyPollOffset);
+    pollScheduler.configure(energyPollOffset, energyPollWindow, TimeUnit.SECONDS, energyPollRate, Instant.now());
+
+    log.info("Settings: target=http://{}/{}, poolSize={}, keepAlive={}, connectTimeout={}, readTimeout={}, "
+        + "poolTimeout={}, retries={}, delay={}, maxDelay={}, circuitThreshold={}, circuitOpenTime={}, "
+        + "maxConcurrency={}, batchSize={}, pollOffset={}, pollWindow={}, pollRate={}, warmupTimeout={}",
+        energyURIAuthority, energyURIPath, energyHttpPoolSize, energyHttpKeepAlive, energyHttpConnectTimeout,
+        energyHttpReadTimeout, energyHttpPoolTimeout, energyUpdateRetries, energyUpdateRetriesDelay,
+        energyRetryMaxDelay,
+        energyCircuitFailureThreshold, energyCircuitOpenTime, energyMaxConcurrency, energyBatchSize,
+        energyPollOffset, energyPollWindow, energyPollRate, energyWarmupTimeout);
+  }
+
+  private void awaitTermination(ExecutorService executor) {
+    try {
+      if (!executor.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.SECONDS)) {
+        log.warn("Energy executor did not terminate in {} s", TERMINATION_TIMEOUT);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Only rebuilds the client when its settings changed, in flight requests keep the old one until closed
+  private void updateConnector() {
+    List<Object> settings = Arrays.asList(energyHttpPoolSize, energyHttpKeepAlive, energyHttpConnectTimeout,
+        energyHttpReadTimeout, energyHttpPoolTimeout, energyHTTPUsername, energyHTTPPassword);
+    UpstreamConnector previous = connector;
+    if (previous == null || !settings.equals(connectorSettings)) {
+      connector = UpstreamConnector.create(httpExecutor, energyHttpPoolSize, energyHttpKeepAlive,
+          energyHttpConnectTimeout, energyHttpReadTimeout, energyHttpPoolTimeout, energyHTTPUsername,
+          energyHTTPPassword);
+      connectorSettings = settings;
+    }
+    WebTarget previousTarget = target;
+    target = connector.client().target("http://" + energyURIAuthority + "/").path(energyURIPath);
+    // Validators of another upstream are meaningless
+    if (previousTarget != null && !previousTarget.getUri().equals(target.getUri())) {
+      upstreamValidators.clear();
     }
 
-    log.info("Settings: target=http://{}/{}, retries={}, delay={}", energyURIAuthority, energyURIPath,
-        energyUpdateRetries, energyUpdateRetriesDelay);
+    if (previous != null && previous != connector) {
+      energyExecutor.schedule(previous::close, energyHttpReadTimeout + energyHttpPoolTimeout,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void evictIdleConnections() {
+    try {
+      connector.evictIdle(energyHttpKeepAlive, TimeUnit.SECONDS);
+    } catch (Exception e) {
+      log.warn("Failed to evict idle HTTP connections", e);
+    }
+  }
+
+  private void registerMetrics() {
+    metricsComponent = metricsService.registerComponent(EnergyMetrics.COMPONENT);
+    upstreamFeature = metricsComponent.registerFeature(METRICS_FEATURE_UPSTREAM);
+    httpLatency = EnergyMetrics.timer(metricsService, metricsComponent, upstreamFeature, METRIC_HTTP_LATENCY);
+    parseTime = EnergyMetrics.timer(metricsService, metricsComponent, upstreamFeature, METRIC_PARSE_TIME);
+    requestFailures = metricsService.createMeter(metricsComponent, upstreamFeature, METRIC_REQUEST_FAILURES);
+    retries = metricsService.createMeter(metricsComponent, upstreamFeature, METRIC_RETRIES);
+    outdatedResponses = metricsService.createMeter(metricsComponent, upstreamFeature, METRIC_OUTDATED_RESPONSES);
+    metricsService.registerMetric(metricsComponent, upstreamFeature, METRIC_REQUESTS_IN_FLIGHT,
+        (Gauge<Integer>) requestLimiter::inFlight);
+    metricsService.registerMetric(metricsComponent, upstreamFeature, METRIC_REQUESTS_QUEUED,
+        (Gauge<Integer>) requestLimiter::pending);
+    metricsService.registerMetric(metricsComponent, upstreamFeature, METRIC_OPEN_CIRCUITS,
+        (Gauge<Integer>) upstreamGuard::openCircuits);
+    metricsService.registerMetric(metricsComponent, upstreamFeature, METRIC_HOST_CIRCUIT_OPEN,
+        (Gauge<Integer>) () -> upstreamGuard.hostState() != UpstreamGuard.State.CLOSED ? 1 : 0);
+    metricsService.registerMetric(metricsComponent, upstreamFeature, METRIC_PENDING_RETRIES,
+        (Gauge<Integer>) upstreamGuard::pendingRetries);
+    metricsService.registerMetric(metricsComponent, upstreamFeature, METRIC_RESPONSES_OK,
+        (Gauge<Long>) upstreamValidators::okResponses);
+    metricsService.registerMetric(metricsComponent, upstreamFeature, METRIC_RESPONSES_NOT_MODIFIED,
+        (Gauge<Long>) upstreamValidators::notModifiedResponses);
+    metricsService.registerMetric(metricsComponent, upstreamFeature, METRIC_RESPONSES_UNCHANGED,
+        (Gauge<Long>) upstreamValidators::unchangedBodies);
+
+    httpPoolFeature = metricsComponent.registerFeature(METRICS_FEATURE_HTTP_POOL);
+    metricsService.registerMetric(metricsComponent, httpPoolFeature, METRIC_POOL_LEASED,
+        (Gauge<Integer>) () -> poolStats().getLeased());
+    metricsService.registerMetric(metricsComponent, httpPoolFeature, METRIC_POOL_AVAILABLE,
+        (Gauge<Integer>) () -> poolStats().getAvailable());
+    metricsService.registerMetric(metricsComponent, httpPoolFeature, METRIC_POOL_PENDING,
+        (Gauge<Integer>) () -> poolStats().getPending());
+    metricsService.registerMetric(metricsComponent, httpPoolFeature, METRIC_POOL_MAX,
+        (Gauge<Integer>) () -> poolStats().getMax());
+
+    pollingFeature = metricsComponent.registerFeature(METRICS_FEATURE_POLLING);
+    cycleDuration = EnergyMetrics.timer(metricsService, metricsComponent, pollingFeature, METRIC_CYCLE_DURATION);
+    emsUpdated = metricsService.createMeter(metricsComponent, pollingFeature, METRIC_EMS_UPDATED);
+
+    warmupFeature = metricsComponent.registerFeature(METRICS_FEATURE_WARMUP);
+    metricsService.registerMetric(metricsComponent, warmupFeature, METRIC_WARMUP_DURATION,
+        (Gauge<Long>) this::warmupDuration);
+    metricsService.registerMetric(metricsComponent, warmupFeature, METRIC_WARMUP_READY,
+        (Gauge<Integer>) () -> ready.get() ? 1 : 0);
+  }
+
+  private PoolStats poolStats() {
+    UpstreamConnector current = connector;
+    return current != null ? current.poolStats() : new PoolStats(0, 0, 0, 0);
+  }
+
+  private void removeMetrics() {
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_OPEN_CIRCUITS);
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_HOST_CIRCUIT_OPEN);
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_PENDING_RETRIES);
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_RESPONSES_OK);
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_RESPONSES_NOT_MODIFIED);
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_RESPONSES_UNCHANGED);
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_HTTP_LATENCY);
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_PARSE_TIME);
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_REQUEST_FAILURES);
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_RETRIES);
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_OUTDATED_RESPONSES);
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_REQUESTS_IN_FLIGHT);
+    metricsService.removeMetric(metricsComponent, upstreamFeature, METRIC_REQUESTS_QUEUED);
+    metricsService.removeMetric(metricsComponent, pollingFeature, METRIC_CYCLE_DURATION);
+    metricsService.removeMetric(metricsComponent, pollingFeature, METRIC_EMS_UPDATED);
+    metricsService.removeMetric(metricsComponent, httpPoolFeature, METRIC_POOL_LEASED);
+    metricsService.removeMetric(metricsComponent, httpPoolFeature, METRIC_POOL_AVAILABLE);
+    metricsService.removeMetric(metricsComponent, httpPoolFeature, METRIC_POOL_PENDING);
+    metricsService.removeMetric(metricsComponent, httpPoolFeature, METRIC_POOL_MAX);
+    metricsService.removeMetric(metricsComponent, warmupFeature, METRIC_WARMUP_DURATION);
+    metricsService.removeMetric(metricsComponent, warmupFeature, METRIC_WARMUP_READY);
+  }
+
+  @Override
+  public List<EnergyPoll> getPollSchedule() {
+    return pollScheduler.schedule();
+  }
+
+  @Override
+  public boolean isReady() {
+    return ready.get();
+  }
+
+  // Milliseconds the warm-up took, or has taken so far
+  private long warmupDuration() {
+    return ready.get() ? warmupMillis : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - warmupStart);
+  }
+
+  // Devices that existed before the provider started raise no events, so their EMS are fetched here
+  private void warmUp() {
+    try {
+      for (Device device : deviceService.getDevices()) {
+        String emsId = device.annotations().value(EMSID_KEY);
+        if (!isNullOrEmpty(emsId)) {
+          deviceEmsIds.put(device.id(), emsId);
+        }
+      }
+
+      Instant now = Instant.now();
+      Instant today = now.truncatedTo(ChronoUnit.DAYS);
+      List<String> missing = new ArrayList<>();
+      for (String emsId : ImmutableSet.copyOf(deviceEmsIds.emsIds())) {
+        if (!isMine(emsId)) {
+          continue;
+        }
+        pollScheduler.add(emsId, now);
+        // Energy restored from a store snapshot only needs fetching if it is from another day
+        Energy energy = energyService.getEnergy(emsId);
+        if (energy == null || !today.equals(energy.timestamp())) {
+          missing.add(emsId);
+        }
+      }
+
+      if (missing.isEmpty()) {
+        finishWarmUp(false, 0, 0);
+        return;
+      }
+
+      AtomicInteger processed = new AtomicInteger();
+      log.info("Energy warm-up: fetching {} EMS of {} devices", missing.size(), deviceService.getDeviceCount());
+      energyExecutor.schedule(() -> finishWarmUp(true, processed.get(), missing.size()),
+          energyWarmupTimeout, TimeUnit.SECONDS);
+
+      // Each chunk is committed on its own, so data becomes visible as the warm-up progresses
+      List<List<String>> batches = Lists.partition(missing, energyBatchSize);
+      List<CompletableFuture<?>> chunks = new ArrayList<>();
+      for (List<List<String>> chunk : Lists.partition(batches, Math.max(1, energyMaxConcurrency))) {
+        int size = chunk.stream().mapToInt(List::size).sum();
+        chunks.add(executeEnergyUpdate(chunk).whenComplete((v, e) -> {
+          int done = processed.addAndGet(size);
+          if (!ready.get()) {
+            log.info("Energy warm-up: {} of {} EMS processed", done, missing.size());
+          }
+        }));
+      }
+      CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0]))
+          .whenComplete((v, e) -> finishWarmUp(false, processed.get(), missing.size()));
+    } catch (Exception e) {
+      log.warn("Energy warm-up failed, reporting ready", e);
+      markReady();
+    }
+  }
+
+  private void finishWarmUp(boolean timedOut, int processed, int total) {
+    if (!markReady()) {
+      return;
+    }
+    if (timedOut) {
+      log.warn("Energy warm-up did not finish in {} s, reporting ready: {} of {} EMS processed",
+          energyWarmupTimeout, processed, total);
+    } else {
+      log.info("Energy warm-up finished in {} ms: {} of {} EMS processed", warmupMillis, processed, total);
+    }
+  }
+
+  private boolean markReady() {
+    long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - warmupStart);
+    if (!ready.compareAndSet(false, true)) {
+      return false;
+    }
+    warmupMillis = duration;
+    return true;
   }
 
   private void schedulePolling() {
-    Instant now = Instant.now();
-    Instant next = now.truncatedTo(ChronoUnit.DAYS).plus(1, ChronoUnit.DAYS);
+    energyExecutor.scheduleWithFixedDelay(this::pollDueEnergy, 1, 1, TimeUnit.SECONDS);
+  }
 
-    energyExecutor.scheduleAtFixedRate(this::executeEnergyUpdate, now.until(next, ChronoUnit.SECONDS),
-        TimeUnit.DAYS.toSeconds(1), TimeUnit.SECONDS);
+  private void pollDueEnergy() {
+    try {
+      List<List<String>> batches = pollScheduler.takeDue(Instant.now(), energyBatchSize);
+      if (!batches.isEmpty()) {
+        executeEnergyUpdate(batches);
+      }
+    } catch (Exception e) {
+      log.warn("Failed to poll due energy", e);
+    }
   }
 
-  private void executeEnergyUpdate() {
-    deviceEmsIds.values().stream().collect(Collectors.toSet())
-        .forEach(emsId -> updateEnergy(emsId, true, energyUpdateRetriesDelay));
+  private boolean isMine(String emsId) {
+    return workPartitionService.isMine(emsId, EMS_HASHER);
   }
 
-  private void updateEnergy(String emsId, boolean verifyOutdated, long retries) {
+  // Polls the EMS this node gained and stops polling the ones it lost
+  private void rebalance() {
+    try {
+      Instant now = Instant.now();
+      int acquired = 0;
+      int released = 0;
+      for (String emsId : ImmutableSet.copyOf(deviceEmsIds.emsIds())) {
+        if (isMine(emsId)) {
+          if (pollScheduler.add(emsId, now)) {
+            ++acquired;
+            // The previous owner may not have fetched it yet
+            if (energyService.getEnergy(emsId) == null) {
+              updateEnergy(emsId, false, this::publishEnergy);
+            }
+          }
+        } else if (pollScheduler.remove(emsId)) {
+          upstreamGuard.forget(emsId);
+          upstreamValidators.forget(emsId);
+          ++released;
+        }
+      }
+
+      if (acquired > 0 || released > 0) {
+        log.info("Energy polling rebalanced: {} EMS acquired, {} EMS released", acquired, released);
+      }
+    } catch (Exception e) {
+      log.warn("Failed to rebalance energy polling", e);
+    }
+  }
+
+  private CompletableFuture<Void> executeEnergyUpdate(List<List<String>> batches) {
+    long start = System.currentTimeMillis();
+    int requested = batches.stream().mapToInt(List::size).sum();
+    Map<String, Energy> cycle = new ConcurrentHashMap<>();
+    Consumer<Energy> sink = energy -> cycle.put(energy.emsId(), energy);
+
+    List<CompletableFuture<?>> updates = new ArrayList<>();
+    for (List<String> batch : batches) {
+      updates.add(batch.size() == 1
+          ? updateEnergy(batch.get(0), true, sink)
+          : updateEnergyBatch(batch, sink));
+    }
+
+    // Outdated EMS are retried on their own and published as they come in
+    return CompletableFuture.allOf(updates.toArray(new CompletableFuture[0])).whenComplete((v, e) -> {
+      if (!cycle.isEmpty()) {
+        providerService.updateEnergy(ImmutableMap.copyOf(cycle));
+      }
+      cycleDuration.update(System.currentTimeMillis() - start, TimeUnit.MILLISECONDS);
+      emsUpdated.mark(cycle.size());
+      log.debug("Energy update finished in {} ms: {} of {} EMS updated",
+          System.currentTimeMillis() - start, cycle.size(), requested);
+    });
+  }
+
+  private void publishEnergy(Energy energy) {
+    providerService.updateEnergy(energy.emsId(), energy);
+  }
+
+  private CompletableFuture<Boolean> updateEnergy(String emsId, boolean verifyOutdated, Consumer<Energy> sink) {
+    if (!upstreamGuard.allowEms(emsId) || !upstreamGuard.allowHost()) {
+      log.debug("Circuit open, deferring energy update for emsId {}", emsId);
+      retryEnergyUpdate(emsId, verifyOutdated);
+      return CompletableFuture.completedFuture(false);
+    }
+
     WebTarget query = target.queryParam(EMSID_KEY, emsId);
 
-    for (int i = 0; i < (energyUpdateRetries + 1); ++i) {
-      EnergyMessage data = doRequest(query);
+    return requestLimiter.submit(() -> doRequest(query, emsId)).thenApply(messages -> {
+      if (messages == null) {
+        failEnergyUpdate(emsId, verifyOutdated);
+        return false;
+      }
 
-      if (data == null) {
-        return;
+      if (messages == UNCHANGED) {
+        return acceptUnchanged(emsId, verifyOutdated);
       }
 
-      if (!data.getEmsId().equals(emsId)) {
+      EnergyMessage data = messages.get(0);
+      if (!emsId.equals(data.getEmsId())) {
         log.error("Received emsId does not match with query {}\n{}",
             query, data);
-        return;
+        failEnergyUpdate(emsId, verifyOutdated);
+        return false;
       }
 
       Instant responseTimestamp = parseTimestamp(data);
-      if (!verifyOutdated || Objects.equals(responseTimestamp, Instant.now().truncatedTo(ChronoUnit.DAYS))) {
-        Energy.Builder builder = DefaultEnergy.builder();
-        Energy energy = builder.setEmsId(data.getEmsId())
-            .setTimestamp(responseTimestamp)
-            .setFlexibilityArray(data.getFlexArrayConsumption())
-            .setEstimateArray(data.getFlexArrayEstimate())
-            .build();
-
-        providerService.updateEnergy(emsId, energy);
-        return;
+      Energy energy = buildEnergy(data, responseTimestamp);
+      if (energy == null) {
+        // The same body must not be accepted as unchanged next time
+        upstreamValidators.invalidate(emsId);
+        failEnergyUpdate(emsId, verifyOutdated);
+        return false;
+      }
+
+      upstreamValidators.recordTimestamp(emsId, responseTimestamp);
+      if (!verifyOutdated || responseTimestamp.equals(Instant.now().truncatedTo(ChronoUnit.DAYS))) {
+        sink.accept(energy);
+        upstreamGuard.emsSucceeded(emsId);
+        return true;
+      }
+
+      outdatedResponses.mark();
+      log.warn("Received outdated energy info for emsId {}", emsId);
+      failEnergyUpdate(emsId, verifyOutdated);
+      return false;
+    });
+  }
+
+  private CompletableFuture<Void> updateEnergyBatch(List<String> emsIds, Consumer<Energy> sink) {
+    if (!upstreamGuard.allowHost()) {
+      log.debug("Circuit open, deferring energy update for {} EMS", emsIds.size());
+      emsIds.forEach(emsId -> retryEnergyUpdate(emsId, true));
+      return CompletableFuture.completedFuture(null);
+    }
+
+    List<String> allowed = new ArrayList<>(emsIds.size());
+    for (String emsId : emsIds) {
+      if (upstreamGuard.allowEms(emsId)) {
+        allowed.add(emsId);
       } else {
-        log.warn("Received outdated energy info for emsId {}", emsId);
-        if (retries > 0) {
-          log.warn("Repeating GET request for emsId {} in {} seconds", emsId, energyUpdateRetriesDelay);
-          energyExecutor.schedule(() -> updateEnergy(emsId, verifyOutdated, retries - 1), energyUpdateRetriesDelay,
-              TimeUnit.SECONDS);
+        retryEnergyUpdate(emsId, true);
+      }
+    }
+    if (allowed.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    WebTarget query = target.queryParam(EMSID_KEY, allowed.toArray());
+    String key = String.join(",", allowed);
+
+    return requestLimiter.submit(() -> doRequest(query, key)).thenCompose(messages -> {
+      if (messages == null) {
+        allowed.forEach(emsId -> failEnergyUpdate(emsId, true));
+        return CompletableFuture.completedFuture(null);
+      }
+
+      if (messages == UNCHANGED) {
+        List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+        for (String emsId : allowed) {
+          if (upstreamValidators.timestamp(emsId) != null) {
+            acceptUnchanged(emsId, true);
+          } else {
+            pending.add(updateEnergy(emsId, true, sink));
+          }
         }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]));
       }
+
+      Set<String> requested = ImmutableSet.copyOf(allowed);
+      Map<String, EnergyMessage> received = Maps.newHashMap();
+      for (EnergyMessage data : messages) {
+        if (requested.contains(data.getEmsId())) {
+          received.putIfAbsent(data.getEmsId(), data);
+        } else {
+          log.warn("Ignoring unexpected emsId {} in batched response for query {}", data.getEmsId(), query);
+        }
+      }
+
+      Instant today = Instant.now().truncatedTo(ChronoUnit.DAYS);
+      List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+      for (String emsId : allowed) {
+        EnergyMessage data = received.get(emsId);
+        if (data == null) {
+          log.warn("Missing energy info for emsId {} in batched response, requesting it individually", emsId);
+          pending.add(updateEnergy(emsId, true, sink));
+          continue;
+        }
+
+        Instant responseTimestamp = parseTimestamp(data);
+        Energy energy = buildEnergy(data, responseTimestamp);
+        if (energy == null) {
+          upstreamValidators.invalidate(key);
+          failEnergyUpdate(emsId, true);
+          continue;
+        }
+
+        upstreamValidators.recordTimestamp(emsId, responseTimestamp);
+        if (responseTimestamp.equals(today)) {
+          sink.accept(energy);
+          upstreamGuard.emsSucceeded(emsId);
+        } else {
+          outdatedResponses.mark();
+          log.warn("Received outdated energy info for emsId {}", emsId);
+          failEnergyUpdate(emsId, true);
+        }
+      }
+
+      return CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]));
+    });
+  }
+
+  // The data last received for the EMS was already handled, only its timestamp matters
+  private boolean acceptUnchanged(String emsId, boolean verifyOutdated) {
+    Instant timestamp = upstreamValidators.timestamp(emsId);
+    if (timestamp == null) {
+      upstreamValidators.invalidate(emsId);
+      failEnergyUpdate(emsId, verifyOutdated);
+      return false;
     }
+
+    if (!verifyOutdated || timestamp.equals(Instant.now().truncatedTo(ChronoUnit.DAYS))) {
+      upstreamGuard.emsSucceeded(emsId);
+      return true;
+    }
+
+    outdatedResponses.mark();
+    log.warn("Energy info for emsId {} is unchanged and still outdated", emsId);
+    failEnergyUpdate(emsId, verifyOutdated);
+    return false;
   }
 
-  private EnergyMessage doRequest(WebTarget query) {
-    Response response;
-    try {
-      response = query.request().get();
-    } catch (ProcessingException e) {
-      log.error("Unable to do GET request {}\n{}", query,
-          e.getCause().getMessage());
+  private void failEnergyUpdate(String emsId, boolean verifyOutdated) {
+    upstreamGuard.emsFailed(emsId);
+    retryEnergyUpdate(emsId, verifyOutdated);
+  }
+
+  private void retryEnergyUpdate(String emsId, boolean verifyOutdated) {
+    long delay = upstreamGuard.reserveRetry(emsId);
+    if (delay == UpstreamGuard.RETRY_PENDING) {
+      return;
+    }
+    if (delay == UpstreamGuard.RETRY_EXHAUSTED) {
+      log.warn("Giving up on emsId {} after {} retries", emsId, energyUpdateRetries);
+      return;
+    }
+
+    retries.mark();
+    log.warn("Repeating GET request for emsId {} in {} ms (attempt {} of {})", emsId, delay,
+        upstreamGuard.attempts(emsId), energyUpdateRetries);
+    delay(delay, TimeUnit.MILLISECONDS).thenRun(() -> {
+      upstreamGuard.retryStarted(emsId);
+      if (deviceEmsIds.contains(emsId) && isMine(emsId)) {
+        updateEnergy(emsId, verifyOutdated, this::publishEnergy);
+      }
+    });
+  }
+
+  // Null if the message lacks a timestamp or a series, which the builder rejects
+  private Energy buildEnergy(EnergyMessage data, Instant timestamp) {
+    if (timestamp == null || isMissing(data.getFlexArrayConsumption())
+        || isMissing(data.getFlexArrayEstimate())) {
+      log.warn("Invalid energy info for emsId {}: {}", data.getEmsId(), data);
       return null;
     }
 
+    Energy.Builder builder = DefaultEnergy.builder();
+    return builder.setEmsId(data.getEmsId())
+        .setTimestamp(timestamp)
+        .setFlexibilityArray(data.getFlexArrayConsumption())
+        .setEstimateArray(data.getFlexArrayEstimate())
+        .build();
+  }
+
+  private static boolean isMissing(double[] values) {
+    return values == null || values.length == 0;
+  }
+
+  private CompletableFuture<Void> delay(long delay, TimeUnit unit) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    try {
+      energyExecutor.schedule(() -> future.complete(null), delay, unit);
+    } catch (RejectedExecutionException e) {
+      // Deactivating, the delayed work is dropped
+      future.cancel(false);
+    }
+    return future;
+  }
+
+  private CompletableFuture<List<EnergyMessage>> doRequest(WebTarget query, String key) {
+    Invocation.Builder request = query.request();
+    if (key != null) {
+      upstreamValidators.addConditions(key, request);
+    }
+
+    long start = System.nanoTime();
+    return request.rx().get().toCompletableFuture().handle((response, error) -> {
+      httpLatency.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      if (error != null) {
+        requestFailures.mark();
+        upstreamGuard.hostFailed();
+        log.error("Unable to do GET request {}\n{}", query,
+            Throwables.getRootCause(error).getMessage());
+        return null;
+      }
+
+      if (response.getStatusInfo().getFamily() == Response.Status.Family.SERVER_ERROR
+          || response.getStatus() == Response.Status.TOO_MANY_REQUESTS.getStatusCode()) {
+        upstreamGuard.hostFailed();
+      } else {
+        upstreamGuard.hostSucceeded();
+      }
+
+      try {
+        List<EnergyMessage> messages = readResponse(query, key, response);
+        if (messages == null) {
+          requestFailures.mark();
+        }
+        return messages;
+      } finally {
+        response.close();
+      }
+    });
+  }
+
+  private List<EnergyMessage> readResponse(WebTarget query, String key, Response response) {
+    if (key != null && response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode()) {
+      upstreamValidators.notModified();
+      return UNCHANGED;
+    }
+
     if (response.getStatus() != Response.Status.OK.getStatusCode()) {
       log.error("GET request failed for query {}\n{}",
           query,
@@ -280,13 +1041,19 @@ public class RestFlexcommEnergyProvider extends AbstractProvider implements Flex
       return null;
     }
 
+    byte[] body;
     List<EnergyMessage> energyResponse;
-    ObjectMapper oMapper = new ObjectMapper();
     try {
-      energyResponse = oMapper.readValue(response.readEntity(InputStream.class),
-          TypeFactory.defaultInstance().constructCollectionType(List.class, EnergyMessage.class));
+      body = response.readEntity(byte[].class);
+      // Upstreams without validators still resend identical bodies
+      if (key != null && upstreamValidators.isUnchanged(key, body)) {
+        return UNCHANGED;
+      }
+      long start = System.nanoTime();
+      energyResponse = EnergyMessageParser.parse(body);
+      parseTime.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     } catch (Exception e) {
-      log.error("Response body format is invalid: {}", e.getCause().getMessage());
+      log.error("Response body format is invalid: {}", Throwables.getRootCause(e).getMessage());
       return null;
     }
 
@@ -295,31 +1062,61 @@ public class RestFlexcommEnergyProvider extends AbstractProvider implements Flex
       return null;
     }
 
-    return energyResponse.get(0);
+    if (key != null) {
+      upstreamValidators.update(key, response, body);
+    }
+    return energyResponse;
   }
 
+
   private Instant parseTimestamp(EnergyMessage data) {
-    Instant responseTimestamp;
+    if (data.getTimestamp() == null) {
+      log.warn("Missing timestamp for emsId {}", data.getEmsId());
+      return null;
+    }
+
     try {
-      responseTimestamp = RESPONSE_TIMESTAMP_FORMATTER.parse(data.getTimestamp()).toInstant()
-          .truncatedTo(ChronoUnit.DAYS);
-    } catch (ParseException e) {
-      log.warn("Failed to parse timestamp with invalid format: {}", e.getCause().getMessage());
-      responseTimestamp = null;
+      return EnergyMessageParser.parseDay(data.getTimestamp());
+    } catch (DateTimeParseException e) {
+      log.warn("Failed to parse timestamp with invalid format: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  // Waits no longer than a request may take once started: the pool lease,
+  // connect and read timeouts. Time queued behind other requests counts too,
+  // so a saturated limiter gives up instead of holding the caller.
+  private List<EnergyMessage> awaitRequest(WebTarget query, CompletableFuture<List<EnergyMessage>> request) {
+    long timeout = (long) energyHttpPoolTimeout + energyHttpConnectTimeout + energyHttpReadTimeout;
+    try {
+      return request.get(timeout, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      request.cancel(false);
+      log.warn("Timed out after {} ms waiting for GET request {}", timeout, query);
+    } catch (ExecutionException e) {
+      log.error("Unable to do GET request {}\n{}", query, Throwables.getRootCause(e).getMessage());
+    } catch (InterruptedException e) {
+      request.cancel(false);
+      Thread.currentThread().interrupt();
     }
-    return responseTimestamp;
+    return null;
   }
 
   @Override
   public Energy performTimestampRequest(String emsId, Instant timestamp) {
     WebTarget query = target.queryParam(EMSID_KEY, emsId).queryParam(TIMESTAMP_KEY,
-        REQUEST_TIMESTAMP_FORMATTER.format(timestamp));
-    EnergyMessage data = doRequest(query);
-    if (data == null) {
+        EnergyMessageParser.formatDay(timestamp));
+    if (!upstreamGuard.allowHost()) {
+      log.debug("Circuit open, skipping energy request for emsId {} at {}", emsId, timestamp);
+      return null;
+    }
+    List<EnergyMessage> messages = awaitRequest(query, requestLimiter.submit(() -> doRequest(query, null)));
+    if (messages == null) {
       return null;
     }
 
-    if (!data.getEmsId().equals(emsId)) {
+    EnergyMessage data = messages.get(0);
+    if (!emsId.equals(data.getEmsId())) {
       log.error("Received emsId does not match with query {}\n{}",
           query, data);
       return null;
@@ -332,13 +1129,7 @@ public class RestFlexcommEnergyProvider extends AbstractProvider implements Flex
       return null;
     }
 
-    Energy.Builder builder = DefaultEnergy.builder();
-    Energy energy = builder.setEmsId(data.getEmsId())
-        .setTimestamp(responseTimestamp)
-        .setFlexibilityArray(data.getFlexArrayConsumption())
-        .setEstimateArray(data.getFlexArrayEstimate())
-        .build();
-    return energy;
+    return buildEnergy(data, responseTimestamp);
   }
 
   private class InternalEnergyProvider implements DeviceListener {
@@ -351,30 +1142,27 @@ public class RestFlexcommEnergyProvider extends AbstractProvider implements Flex
         return;
       }
 
-      String emsId;
       Device device = event.subject();
       switch (event.type()) {
         case DEVICE_ADDED:
         case DEVICE_UPDATED:
-          if (device.annotations().keys().contains(EMSID_KEY)) {
-            emsId = device.annotations().value(EMSID_KEY);
-            if (!deviceEmsIds.values().contains(emsId)) {
-              updateEnergy(emsId, false, 0L);
+          String emsId = device.annotations().value(EMSID_KEY);
+          if (!isNullOrEmpty(emsId)) {
+            DeviceEmsIndex.Change change = deviceEmsIds.put(device.id(), emsId);
+            if (change.released() != null) {
+              releaseEms(change.released());
             }
-            deviceEmsIds.put(device.id(), emsId);
-          } else {
-            emsId = deviceEmsIds.remove(device.id());
-            if (!deviceEmsIds.values().contains(emsId)) {
-              providerService.removeEnergy(emsId);
+            if (change.added() != null && isMine(emsId)) {
+              pollScheduler.add(emsId, Instant.now());
+              updateEnergy(emsId, false, RestFlexcommEnergyProvider.this::publishEnergy);
             }
+          } else {
+            releaseDevice(device.id());
           }
           break;
 
         case DEVICE_REMOVED:
-          emsId = deviceEmsIds.remove(device.id());
-          if (!deviceEmsIds.values().contains(emsId)) {
-            providerService.removeEnergy(emsId);
-          }
+          releaseDevice(device.id());
           break;
 
         default:
@@ -382,8 +1170,32 @@ public class RestFlexcommEnergyProvider extends AbstractProvider implements Flex
       }
     }
 
+    private void releaseDevice(DeviceId deviceId) {
+      String released = deviceEmsIds.remove(deviceId);
+      if (released != null) {
+        releaseEms(released);
+      }
+    }
+
+    private void releaseEms(String emsId) {
+      pollScheduler.remove(emsId);
+      upstreamGuard.forget(emsId);
+      upstreamValidators.forget(emsId);
+      if (isMine(emsId)) {
+        providerService.removeEnergy(emsId);
+      }
+    }
+
     private void disable() {
       isDisable = true;
     }
   }
+
+  private class InternalWorkPartitionListener implements WorkPartitionEventListener {
+
+    @Override
+    public void event(WorkPartitionEvent event) {
+      energyExecutor.execute(RestFlexcommEnergyProvider.this::rebalance);
+    }
+  }
 }
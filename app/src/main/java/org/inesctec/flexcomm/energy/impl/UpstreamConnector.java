@@ -0,0 +1,108 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
+
+/**
+ * Jersey client for the upstream EMS service, backed by a pool of
+ * keep-alive connections.
+ * <p>
+ * Connect, read and pool wait times are all bounded, so a hung upstream
+ * fails the request instead of holding a connection or a caller forever.
+ * Responses are requested compressed and decoded as they are read.
+ */
+final class UpstreamConnector {
+
+  private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+  private final Client client;
+  private final PoolingHttpClientConnectionManager connectionManager;
+
+  private UpstreamConnector(Client client, PoolingHttpClientConnectionManager connectionManager) {
+    this.client = client;
+    this.connectionManager = connectionManager;
+  }
+
+  /**
+   * Creates a connector.
+   *
+   * @param executor       executor of the asynchronous requests
+   * @param poolSize       connections kept per route
+   * @param keepAlive      seconds a connection may be reused for
+   * @param connectTimeout connect timeout in milliseconds
+   * @param readTimeout    read timeout in milliseconds
+   * @param poolTimeout    milliseconds to wait for a pooled connection
+   * @param username       basic authentication user, or empty
+   * @param password       basic authentication password, or empty
+   * @return new connector
+   */
+  static UpstreamConnector create(ExecutorService executor, int poolSize, long keepAlive, int connectTimeout,
+      int readTimeout, int poolTimeout, String username, String password) {
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(keepAlive,
+        TimeUnit.SECONDS);
+    connectionManager.setMaxTotal(poolSize);
+    connectionManager.setDefaultMaxPerRoute(poolSize);
+    connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+
+    ClientConfig config = new ClientConfig()
+        .connectorProvider(new ApacheConnectorProvider())
+        .property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager)
+        .property(ApacheClientProperties.REQUEST_CONFIG, RequestConfig.custom()
+            .setConnectionRequestTimeout(poolTimeout)
+            .build())
+        .property(ClientProperties.CONNECT_TIMEOUT, connectTimeout)
+        .property(ClientProperties.READ_TIMEOUT, readTimeout)
+        .register(EncodingFilter.class)
+        .register(GZipEncoder.class)
+        .register(DeflateEncoder.class);
+    if (!username.isEmpty() && !password.isEmpty()) {
+      config.register(HttpAuthenticationFeature.basic(username, password));
+    }
+
+    Client client = ClientBuilder.newBuilder()
+        .withConfig(config)
+        .executorService(executor)
+        .build();
+    return new UpstreamConnector(client, connectionManager);
+  }
+
+  Client client() {
+    return client;
+  }
+
+  PoolStats poolStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  /**
+   * Closes connections that expired or sat idle for longer than the given
+   * time.
+   *
+   * @param idle idle time
+   * @param unit unit of the idle time
+   */
+  void evictIdle(long idle, TimeUnit unit) {
+    connectionManager.closeExpiredConnections();
+    connectionManager.closeIdleConnections(idle, unit);
+  }
+
+  void close() {
+    client.close();
+    connectionManager.shutdown();
+  }
+}
@@ -0,0 +1,194 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retry and circuit breaker state of the upstream EMS service.
+ * <p>
+ * Every EMS retries with exponential backoff and jitter until its attempt
+ * budget is spent, with at most one retry pending at a time. Consecutive
+ * failures open a circuit, per EMS and for the whole host, which rejects
+ * requests until a cool down has passed and then lets a single probe
+ * through. A successful probe closes the circuit, a failed one opens it
+ * again.
+ */
+final class UpstreamGuard {
+
+  /**
+   * A retry of the EMS is already pending.
+   */
+  static final long RETRY_PENDING = -1;
+
+  /**
+   * The attempt budget of the EMS is spent.
+   */
+  static final long RETRY_EXHAUSTED = -2;
+
+  enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN,
+  }
+
+  private static final class Circuit {
+    private State state = State.CLOSED;
+    private int failures;
+    private long changedAt;
+
+    private synchronized boolean allow(long now, long openNanos) {
+      switch (state) {
+        case CLOSED:
+          return true;
+        case OPEN:
+        case HALF_OPEN:
+          // A probe that never reported back does not hold the circuit forever
+          if (now - changedAt < openNanos) {
+            return false;
+          }
+          state = State.HALF_OPEN;
+          changedAt = now;
+          return true;
+        default:
+          return false;
+      }
+    }
+
+    private synchronized void success() {
+      state = State.CLOSED;
+      failures = 0;
+    }
+
+    private synchronized void failure(long now, int threshold) {
+      ++failures;
+      if (state == State.HALF_OPEN || failures >= threshold) {
+        state = State.OPEN;
+        changedAt = now;
+      }
+    }
+
+    private synchronized State state() {
+      return state;
+    }
+  }
+
+  private final Circuit host = new Circuit();
+  private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Integer> attempts = new ConcurrentHashMap<>();
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+  private volatile long baseDelayMillis;
+  private volatile long maxDelayMillis;
+  private volatile int maxAttempts;
+  private volatile int failureThreshold;
+  private volatile long openNanos;
+
+  UpstreamGuard(long baseDelay, long maxDelay, int maxAttempts, int failureThreshold, long openTime,
+      TimeUnit unit) {
+    configure(baseDelay, maxDelay, maxAttempts, failureThreshold, openTime, unit);
+  }
+
+  void configure(long baseDelay, long maxDelay, int maxAttempts, int failureThreshold, long openTime,
+      TimeUnit unit) {
+    this.baseDelayMillis = Math.max(1, unit.toMillis(baseDelay));
+    this.maxDelayMillis = Math.max(baseDelayMillis, unit.toMillis(maxDelay));
+    this.maxAttempts = Math.max(0, maxAttempts);
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.openNanos = unit.toNanos(openTime);
+  }
+
+  boolean allowHost() {
+    return host.allow(System.nanoTime(), openNanos);
+  }
+
+  void hostSucceeded() {
+    host.success();
+  }
+
+  void hostFailed() {
+    host.failure(System.nanoTime(), failureThreshold);
+  }
+
+  boolean allowEms(String emsId) {
+    Circuit circuit = circuits.get(emsId);
+    return circuit == null || circuit.allow(System.nanoTime(), openNanos);
+  }
+
+  void emsSucceeded(String emsId) {
+    circuits.remove(emsId);
+    attempts.remove(emsId);
+  }
+
+  void emsFailed(String emsId) {
+    circuits.computeIfAbsent(emsId, k -> new Circuit()).failure(System.nanoTime(), failureThreshold);
+  }
+
+  /**
+   * Reserves the next retry of an EMS.
+   *
+   * @param emsId EMS identifier
+   * @return delay before the retry in milliseconds, or {@link #RETRY_PENDING}
+   *         or {@link #RETRY_EXHAUSTED}
+   */
+  long reserveRetry(String emsId) {
+    if (!pending.add(emsId)) {
+      return RETRY_PENDING;
+    }
+
+    int attempt = attempts.merge(emsId, 1, Integer::sum);
+    if (attempt > maxAttempts) {
+      attempts.remove(emsId);
+      pending.remove(emsId);
+      return RETRY_EXHAUSTED;
+    }
+
+    long delay = baseDelayMillis << Math.min(attempt - 1, 30);
+    if (delay <= 0 || delay > maxDelayMillis) {
+      delay = maxDelayMillis;
+    }
+    // Equal jitter, half fixed and half random
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+
+  void retryStarted(String emsId) {
+    pending.remove(emsId);
+  }
+
+  int attempts(String emsId) {
+    return attempts.getOrDefault(emsId, 0);
+  }
+
+  void forget(String emsId) {
+    circuits.remove(emsId);
+    attempts.remove(emsId);
+    pending.remove(emsId);
+  }
+
+  void clear() {
+    host.success();
+    circuits.clear();
+    attempts.clear();
+    pending.clear();
+  }
+
+  State hostState() {
+    return host.state();
+  }
+
+  int openCircuits() {
+    int open = 0;
+    for (Circuit circuit : circuits.values()) {
+      if (circuit.state() != State.CLOSED) {
+        ++open;
+      }
+    }
+    return open;
+  }
+
+  int pendingRetries() {
+    return pending.size();
+  }
+}
@@ -0,0 +1,137 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Validators of the last upstream response to each request.
+ * <p>
+ * The ETag and Last-Modified of a response are sent back as conditions of
+ * the next request with the same key. For servers without validators, a hash
+ * of the body tells whether it changed since the last one. An unchanged
+ * response carries no data, so the timestamp last received for each EMS is
+ * kept to know what the unchanged data was.
+ */
+final class UpstreamValidators {
+
+  private static final HashFunction BODY_HASH = Hashing.murmur3_128();
+  private static final int MAX_ENTRIES = 100000;
+
+  private static final class Validator {
+    private final String etag;
+    private final String lastModified;
+    private final HashCode bodyHash;
+
+    private Validator(String etag, String lastModified, HashCode bodyHash) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.bodyHash = bodyHash;
+    }
+  }
+
+  private final Cache<String, Validator> validators = CacheBuilder.newBuilder()
+      .maximumSize(MAX_ENTRIES)
+      .expireAfterAccess(2, TimeUnit.DAYS)
+      .build();
+  private final ConcurrentMap<String, Instant> timestamps = new ConcurrentHashMap<>();
+
+  private final AtomicLong okResponses = new AtomicLong();
+  private final AtomicLong notModifiedResponses = new AtomicLong();
+  private final AtomicLong unchangedBodies = new AtomicLong();
+
+  void addConditions(String key, Invocation.Builder request) {
+    Validator validator = validators.getIfPresent(key);
+    if (validator == null) {
+      return;
+    }
+    if (validator.etag != null) {
+      request.header(HttpHeaders.IF_NONE_MATCH, validator.etag);
+    }
+    if (validator.lastModified != null) {
+      request.header(HttpHeaders.IF_MODIFIED_SINCE, validator.lastModified);
+    }
+  }
+
+  void notModified() {
+    notModifiedResponses.incrementAndGet();
+  }
+
+  /**
+   * Returns whether a full response repeats the last body seen for the key.
+   *
+   * @param key  request key
+   * @param body response body
+   * @return true if the body is unchanged
+   */
+  boolean isUnchanged(String key, byte[] body) {
+    okResponses.incrementAndGet();
+    Validator validator = validators.getIfPresent(key);
+    if (validator != null && validator.bodyHash.equals(BODY_HASH.hashBytes(body))) {
+      unchangedBodies.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  void update(String key, Response response, byte[] body) {
+    validators.put(key, new Validator(response.getHeaderString(HttpHeaders.ETAG),
+        response.getHeaderString(HttpHeaders.LAST_MODIFIED), BODY_HASH.hashBytes(body)));
+  }
+
+  void invalidate(String key) {
+    validators.invalidate(key);
+  }
+
+  void recordTimestamp(String emsId, Instant timestamp) {
+    if (timestamp != null) {
+      timestamps.put(emsId, timestamp);
+    } else {
+      timestamps.remove(emsId);
+    }
+  }
+
+  /**
+   * Returns the timestamp last received for an EMS.
+   *
+   * @param emsId EMS identifier
+   * @return timestamp, or null if unknown
+   */
+  Instant timestamp(String emsId) {
+    return timestamps.get(emsId);
+  }
+
+  void forget(String emsId) {
+    timestamps.remove(emsId);
+    validators.invalidate(emsId);
+  }
+
+  void clear() {
+    validators.invalidateAll();
+    timestamps.clear();
+  }
+
+  long okResponses() {
+    return okResponses.get();
+  }
+
+  long notModifiedResponses() {
+    return notModifiedResponses.get();
+  }
+
+  long unchangedBodies() {
+    return unchangedBodies.get();
+  }
+}
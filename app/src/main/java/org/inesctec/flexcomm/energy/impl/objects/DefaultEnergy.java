@@ -3,25 +3,31 @@ package org.inesctec.flexcomm.energy.impl.objects;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.nio.DoubleBuffer;
 import java.time.Instant;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 import org.inesctec.flexcomm.energy.api.Energy;
 import org.onosproject.net.AbstractAnnotated;
 import org.onosproject.net.Annotations;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.primitives.Doubles;
 
 public final class DefaultEnergy extends AbstractAnnotated implements Energy {
 
+  private static final double[] EMPTY_ARRAY = new double[0];
+
   private final String emsId;
   private final Instant timestamp;
-  private final List<Double> flexibilityArray;
-  private final List<Double> estimateArray;
+  private final double[] flexibilityArray;
+  private final double[] estimateArray;
 
-  private DefaultEnergy(String emsId, Instant timestamp, List<Double> flexibilityArray,
-      List<Double> estimateArray, Annotations annotations) {
+  private DefaultEnergy(String emsId, Instant timestamp, double[] flexibilityArray,
+      double[] estimateArray, Annotations annotations) {
     super(annotations);
     this.emsId = emsId;
     this.timestamp = timestamp;
@@ -32,8 +38,8 @@ public final class DefaultEnergy extends AbstractAnnotated implements Energy {
   private DefaultEnergy() {
     this.emsId = null;
     this.timestamp = null;
-    this.flexibilityArray = null;
-    this.estimateArray = null;
+    this.flexibilityArray = EMPTY_ARRAY;
+    this.estimateArray = EMPTY_ARRAY;
   }
 
   public static Energy.Builder builder() {
@@ -52,12 +58,58 @@ public final class DefaultEnergy extends AbstractAnnotated implements Energy {
 
   @Override
   public List<Double> flexibilityArray() {
-    return this.flexibilityArray;
+    return Collections.unmodifiableList(Doubles.asList(flexibilityArray));
   }
 
   @Override
   public List<Double> estimateArray() {
-    return this.estimateArray;
+    return Collections.unmodifiableList(Doubles.asList(estimateArray));
+  }
+
+  @Override
+  public int slotCount() {
+    return Math.min(flexibilityArray.length, estimateArray.length);
+  }
+
+  @Override
+  public double flexibilityAt(int slot) {
+    return flexibilityArray[slot];
+  }
+
+  @Override
+  public double estimateAt(int slot) {
+    return estimateArray[slot];
+  }
+
+  @Override
+  public DoubleBuffer flexibilityBuffer() {
+    return DoubleBuffer.wrap(flexibilityArray).asReadOnlyBuffer();
+  }
+
+  @Override
+  public DoubleBuffer estimateBuffer() {
+    return DoubleBuffer.wrap(estimateArray).asReadOnlyBuffer();
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(emsId, timestamp, Arrays.hashCode(flexibilityArray), Arrays.hashCode(estimateArray));
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof DefaultEnergy)) {
+      return false;
+    }
+    DefaultEnergy that = (DefaultEnergy) obj;
+    return Objects.equals(emsId, that.emsId)
+        && Objects.equals(timestamp, that.timestamp)
+        && Arrays.equals(flexibilityArray, that.flexibilityArray)
+        && Arrays.equals(estimateArray, that.estimateArray)
+        && Objects.equals(annotations(), that.annotations());
   }
 
   @Override
@@ -65,16 +117,16 @@ public final class DefaultEnergy extends AbstractAnnotated implements Energy {
     return MoreObjects.toStringHelper(this)
         .add("emsId", emsId)
         .add("timestamp", timestamp)
-        .add("flexibilityArray", flexibilityArray)
-        .add("estimateArray", estimateArray)
+        .add("flexibilityArray", Arrays.toString(flexibilityArray))
+        .add("estimateArray", Arrays.toString(estimateArray))
         .toString();
   }
 
   public static final class Builder implements Energy.Builder {
     String emsId = null;
     Instant timestamp = null;
-    List<Double> flexibilityArray = new ArrayList<>();
-    List<Double> estimateArray = new ArrayList<>();
+    double[] flexibilityArray = EMPTY_ARRAY;
+    double[] estimateArray = EMPTY_ARRAY;
     Annotations annotations;
 
     private Builder() {
@@ -97,14 +149,30 @@ public final class DefaultEnergy extends AbstractAnnotated implements Energy {
     @Override
     public Energy.Builder setFlexibilityArray(
         List<Double> flexibilityArray) {
-      this.flexibilityArray = flexibilityArray;
+      this.flexibilityArray = flexibilityArray != null ? Doubles.toArray(flexibilityArray) : EMPTY_ARRAY;
+
+      return this;
+    }
+
+    // The array is taken over as is, callers must not modify it afterwards
+    @Override
+    public Energy.Builder setFlexibilityArray(double[] flexibilityArray) {
+      this.flexibilityArray = flexibilityArray != null ? flexibilityArray : EMPTY_ARRAY;
 
       return this;
     }
 
     @Override
     public Energy.Builder setEstimateArray(List<Double> estimateArray) {
-      this.estimateArray = estimateArray;
+      this.estimateArray = estimateArray != null ? Doubles.toArray(estimateArray) : EMPTY_ARRAY;
+
+      return this;
+    }
+
+    // The array is taken over as is, callers must not modify it afterwards
+    @Override
+    public Energy.Builder setEstimateArray(double[] estimateArray) {
+      this.estimateArray = estimateArray != null ? estimateArray : EMPTY_ARRAY;
 
       return this;
     }
@@ -120,8 +188,8 @@ public final class DefaultEnergy extends AbstractAnnotated implements Energy {
     public Energy build() {
       checkNotNull(emsId, "Must specify a ems Id");
       checkNotNull(timestamp, "Must specify a timestamp");
-      checkArgument(flexibilityArray.size() != 0, "Must specify a flexibility array");
-      checkArgument(estimateArray.size() != 0, "Must specify a estimation array");
+      checkArgument(flexibilityArray.length != 0, "Must specify a flexibility array");
+      checkArgument(estimateArray.length != 0, "Must specify a estimation array");
       return new DefaultEnergy(emsId, timestamp, flexibilityArray, estimateArray, annotations);
     }
 
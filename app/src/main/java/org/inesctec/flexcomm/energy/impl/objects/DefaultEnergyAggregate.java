@@ -0,0 +1,86 @@
+package org.inesctec.flexcomm.energy.impl.objects;
+
+import java.util.Arrays;
+
+import org.inesctec.flexcomm.energy.api.EnergyAggregate;
+
+import com.google.common.base.MoreObjects;
+
+public final class DefaultEnergyAggregate implements EnergyAggregate {
+
+  public static final EnergyAggregate EMPTY = new DefaultEnergyAggregate(new int[0], new double[0], new double[0],
+      new double[0], new double[0], new double[0], new double[0]);
+
+  private final int[] count;
+  private final double[] flexibilitySum;
+  private final double[] flexibilityMin;
+  private final double[] flexibilityMax;
+  private final double[] estimateSum;
+  private final double[] estimateMin;
+  private final double[] estimateMax;
+
+  /**
+   * Creates an aggregate owning the given arrays, which must all have the same
+   * length and must not be modified afterwards.
+   */
+  public DefaultEnergyAggregate(int[] count, double[] flexibilitySum, double[] flexibilityMin,
+      double[] flexibilityMax, double[] estimateSum, double[] estimateMin, double[] estimateMax) {
+    this.count = count;
+    this.flexibilitySum = flexibilitySum;
+    this.flexibilityMin = flexibilityMin;
+    this.flexibilityMax = flexibilityMax;
+    this.estimateSum = estimateSum;
+    this.estimateMin = estimateMin;
+    this.estimateMax = estimateMax;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("count", Arrays.toString(count))
+        .add("flexibilitySum", Arrays.toString(flexibilitySum))
+        .add("estimateSum", Arrays.toString(estimateSum))
+        .toString();
+  }
+
+  @Override
+  public int slotCount() {
+    return count.length;
+  }
+
+  @Override
+  public int count(int slot) {
+    return count[slot];
+  }
+
+  @Override
+  public double flexibilitySum(int slot) {
+    return flexibilitySum[slot];
+  }
+
+  @Override
+  public double flexibilityMin(int slot) {
+    return flexibilityMin[slot];
+  }
+
+  @Override
+  public double flexibilityMax(int slot) {
+    return flexibilityMax[slot];
+  }
+
+  @Override
+  public double estimateSum(int slot) {
+    return estimateSum[slot];
+  }
+
+  @Override
+  public double estimateMin(int slot) {
+    return estimateMin[slot];
+  }
+
+  @Override
+  public double estimateMax(int slot) {
+    return estimateMax[slot];
+  }
+
+}
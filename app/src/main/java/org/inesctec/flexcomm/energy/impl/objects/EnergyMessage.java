@@ -1,7 +1,7 @@
 package org.inesctec.flexcomm.energy.impl.objects;
 
 import java.io.Serializable;
-import java.util.List;
+import java.util.Arrays;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -18,10 +18,10 @@ public class EnergyMessage implements Serializable {
   private String emsId;
 
   @JsonProperty("flexArrayConsumption")
-  private List<Double> flexArrayConsumption;
+  private double[] flexArrayConsumption;
 
   @JsonProperty("flexArrayEstimate")
-  private List<Double> flexArrayEstimate;
+  private double[] flexArrayEstimate;
 
   public String getTimestamp() {
     return timestamp;
@@ -39,25 +39,25 @@ public class EnergyMessage implements Serializable {
     this.emsId = emsId;
   }
 
-  public List<Double> getFlexArrayConsumption() {
+  public double[] getFlexArrayConsumption() {
     return flexArrayConsumption;
   }
 
-  public void setFlexArrayConsumption(List<Double> flexArrayConsumption) {
+  public void setFlexArrayConsumption(double[] flexArrayConsumption) {
     this.flexArrayConsumption = flexArrayConsumption;
   }
 
-  public List<Double> getFlexArrayEstimate() {
+  public double[] getFlexArrayEstimate() {
     return flexArrayEstimate;
   }
 
-  public void setFlexArrayEstimate(List<Double> flexArrayEstimate) {
+  public void setFlexArrayEstimate(double[] flexArrayEstimate) {
     this.flexArrayEstimate = flexArrayEstimate;
   }
 
   @Override
   public String toString() {
     return "EnergyMessage [timestamp=" + timestamp + ", emsId=" + emsId + ", flexArrayConsumption="
-        + flexArrayConsumption + ", flexArrayEstimate=" + flexArrayEstimate + "]";
+        + Arrays.toString(flexArrayConsumption) + ", flexArrayEstimate=" + Arrays.toString(flexArrayEstimate) + "]";
   }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inesctec.flexcomm.energy.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Compresses responses with gzip or deflate, as negotiated by the request
+ * Accept-Encoding header.
+ * <p>
+ * Output is buffered up to the configured threshold, responses that fit in
+ * it are sent as they are, since compressing them saves nothing. The
+ * threshold is read from the {@value #THRESHOLD_PROPERTY} init parameter, a
+ * negative value disables compression.
+ */
+@Provider
+@Priority(Priorities.ENTITY_CODER)
+public class CompressionInterceptor implements WriterInterceptor {
+
+  public static final String THRESHOLD_PROPERTY = "flexcomm.energy.compression.threshold";
+  public static final int THRESHOLD_DEFAULT = 1024;
+
+  private static final String GZIP = "gzip";
+  private static final String X_GZIP = "x-gzip";
+  private static final String DEFLATE = "deflate";
+
+  @Context
+  private HttpHeaders requestHeaders;
+
+  @Context
+  private Configuration config;
+
+  @Override
+  public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+    MultivaluedMap<String, Object> headers = context.getHeaders();
+    int threshold = threshold();
+    if (threshold < 0 || headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+      context.proceed();
+      return;
+    }
+
+    headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    String encoding = negotiate(requestHeaders.getRequestHeader(HttpHeaders.ACCEPT_ENCODING));
+    if (encoding == null) {
+      context.proceed();
+      return;
+    }
+
+    ThresholdOutputStream output = new ThresholdOutputStream(context.getOutputStream(), headers,
+        encoding, threshold);
+    context.setOutputStream(output);
+    context.proceed();
+    output.finish();
+  }
+
+  private int threshold() {
+    Object value = config.getProperty(THRESHOLD_PROPERTY);
+    if (value == null) {
+      return THRESHOLD_DEFAULT;
+    }
+    try {
+      return Integer.parseInt(value.toString().trim());
+    } catch (NumberFormatException e) {
+      return THRESHOLD_DEFAULT;
+    }
+  }
+
+  // Picks gzip over deflate, skipping codings refused with q=0
+  private static String negotiate(List<String> acceptEncoding) {
+    if (acceptEncoding == null) {
+      return null;
+    }
+
+    boolean deflate = false;
+    for (String header : acceptEncoding) {
+      for (String element : header.split(",")) {
+        String[] parts = element.split(";");
+        String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+        if (isRefused(parts)) {
+          continue;
+        }
+        if (coding.equals(GZIP) || coding.equals(X_GZIP) || coding.equals("*")) {
+          return GZIP;
+        }
+        deflate |= coding.equals(DEFLATE);
+      }
+    }
+    return deflate ? DEFLATE : null;
+  }
+
+  private static boolean isRefused(String[] parts) {
+    for (int i = 1; i < parts.length; ++i) {
+      String param = parts[i].trim();
+      if (param.startsWith("q=")) {
+        try {
+          return Double.parseDouble(param.substring(2)) <= 0;
+        } catch (NumberFormatException e) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Holds output back until it outgrows the threshold, then switches the
+   * response to the negotiated encoding. Headers are only committed on the
+   * first write to the entity stream, so they can still be changed here.
+   */
+  private static final class ThresholdOutputStream extends OutputStream {
+    private final OutputStream entity;
+    private final MultivaluedMap<String, Object> headers;
+    private final String encoding;
+    private final int threshold;
+
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private OutputStream compressed;
+
+    private ThresholdOutputStream(OutputStream entity, MultivaluedMap<String, Object> headers, String encoding,
+        int threshold) {
+      this.entity = entity;
+      this.headers = headers;
+      this.encoding = encoding;
+      this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (compressed != null) {
+        compressed.write(b, off, len);
+        return;
+      }
+
+      buffer.write(b, off, len);
+      if (buffer.size() > threshold) {
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        // The compressed stream is closed to release its deflater, the entity stream belongs to Jersey
+        OutputStream target = new FilterOutputStream(entity) {
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+          }
+
+          @Override
+          public void close() throws IOException {
+            flush();
+          }
+        };
+        compressed = encoding.equals(GZIP) ? new GZIPOutputStream(target) : new DeflaterOutputStream(target);
+        buffer.writeTo(compressed);
+        buffer = null;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      // Flushing a partial buffer would commit the headers too early
+      if (compressed != null) {
+        compressed.flush();
+      }
+    }
+
+    void finish() throws IOException {
+      if (compressed != null) {
+        compressed.close();
+      } else if (buffer != null) {
+        buffer.writeTo(entity);
+        buffer = null;
+      }
+      entity.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      // Jersey closes the entity stream once the interceptors return
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package org.inesctec.flexcomm.energy.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.inesctec.flexcomm.energy.api.EnergyAggregate;
+import org.onosproject.codec.CodecContext;
+import org.onosproject.codec.JsonCodec;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public final class EnergyAggregateCodec extends JsonCodec<EnergyAggregate> {
+
+  @Override
+  public ObjectNode encode(EnergyAggregate entry, CodecContext context) {
+    checkNotNull(entry, "Energy Aggregate cannot be null");
+
+    final ObjectNode result = context.mapper().createObjectNode();
+    final ArrayNode slots = result.putArray("slots");
+    for (int slot = 0; slot < entry.slotCount(); ++slot) {
+      final ObjectNode node = slots.addObject()
+          .put("slot", slot)
+          .put("count", entry.count(slot));
+      final ObjectNode flexibility = node.putObject("flexibility")
+          .put("sum", entry.flexibilitySum(slot));
+      final ObjectNode estimate = node.putObject("estimate")
+          .put("sum", entry.estimateSum(slot));
+      if (entry.count(slot) > 0) {
+        flexibility.put("min", entry.flexibilityMin(slot)).put("max", entry.flexibilityMax(slot));
+        estimate.put("min", entry.estimateMin(slot)).put("max", entry.estimateMax(slot));
+      }
+    }
+
+    return result;
+  }
+
+}
@@ -2,6 +2,8 @@ package org.inesctec.flexcomm.energy.rest;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.nio.DoubleBuffer;
+
 import org.inesctec.flexcomm.energy.api.Energy;
 import org.onosproject.codec.CodecContext;
 import org.onosproject.codec.impl.AnnotatedCodec;
@@ -19,10 +21,16 @@ public final class EnergyCodec extends AnnotatedCodec<Energy> {
         .put("emsId", entry.emsId())
         .put("timestamp", entry.timestamp().toString());
     final ArrayNode flexibilityNode = result.putArray("flexibility");
-    entry.flexibilityArray().forEach(flexibilityNode::add);
+    final DoubleBuffer flexibility = entry.flexibilityBuffer();
+    while (flexibility.hasRemaining()) {
+      flexibilityNode.add(flexibility.get());
+    }
 
     final ArrayNode estimateNode = result.putArray("estimate");
-    entry.estimateArray().forEach(estimateNode::add);
+    final DoubleBuffer estimate = entry.estimateBuffer();
+    while (estimate.hasRemaining()) {
+      estimateNode.add(estimate.get());
+    }
 
     return annotate(result, entry, context);
   }
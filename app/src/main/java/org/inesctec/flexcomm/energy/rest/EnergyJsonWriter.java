@@ -0,0 +1,186 @@
+package org.inesctec.flexcomm.energy.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyAggregate;
+import org.inesctec.flexcomm.energy.api.EnergyPeriod;
+import org.inesctec.flexcomm.energy.api.EnergyPoll;
+import org.onosproject.net.Annotations;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Streaming counterpart of {@link EnergyCodec}, {@link EnergyPeriodCodec} and
+ * {@link EnergyAggregateCodec},
+ * writing the same JSON straight to a generator without building a tree.
+ */
+public final class EnergyJsonWriter {
+
+  private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private EnergyJsonWriter() {
+  }
+
+  public static void writeEnergy(JsonGenerator generator, Energy entry) throws IOException {
+    checkNotNull(entry, "Energy cannot be null");
+
+    generator.writeStartObject();
+    generator.writeStringField("emsId", entry.emsId());
+    generator.writeStringField("timestamp", entry.timestamp().toString());
+    writeSeries(generator, "flexibility", entry.flexibilityBuffer());
+    writeSeries(generator, "estimate", entry.estimateBuffer());
+    writeAnnotations(generator, entry.annotations());
+    generator.writeEndObject();
+  }
+
+  public static void writeEnergyPeriod(JsonGenerator generator, EnergyPeriod entry) throws IOException {
+    checkNotNull(entry, "Energy Period cannot be null");
+
+    generator.writeStartObject();
+    generator.writeStringField("emsId", entry.emsId());
+    generator.writeStringField("timestamp", entry.timestamp().toString());
+    generator.writeNumberField("flexibility", entry.flexibility());
+    generator.writeNumberField("estimate", entry.estimate());
+    writeAnnotations(generator, entry.annotations());
+    generator.writeEndObject();
+  }
+
+  public static void writeEnergyAggregate(JsonGenerator generator, EnergyAggregate entry) throws IOException {
+    checkNotNull(entry, "Energy Aggregate cannot be null");
+
+    generator.writeStartObject();
+    generator.writeArrayFieldStart("slots");
+    for (int slot = 0; slot < entry.slotCount(); ++slot) {
+      boolean populated = entry.count(slot) > 0;
+      generator.writeStartObject();
+      generator.writeNumberField("slot", slot);
+      generator.writeNumberField("count", entry.count(slot));
+      generator.writeObjectFieldStart("flexibility");
+      generator.writeNumberField("sum", entry.flexibilitySum(slot));
+      if (populated) {
+        generator.writeNumberField("min", entry.flexibilityMin(slot));
+        generator.writeNumberField("max", entry.flexibilityMax(slot));
+      }
+      generator.writeEndObject();
+      generator.writeObjectFieldStart("estimate");
+      generator.writeNumberField("sum", entry.estimateSum(slot));
+      if (populated) {
+        generator.writeNumberField("min", entry.estimateMin(slot));
+        generator.writeNumberField("max", entry.estimateMax(slot));
+      }
+      generator.writeEndObject();
+      generator.writeEndObject();
+    }
+    generator.writeEndArray();
+    generator.writeEndObject();
+  }
+
+  public static void writeEnergyPoll(JsonGenerator generator, EnergyPoll entry) throws IOException {
+    checkNotNull(entry, "Energy Poll cannot be null");
+
+    generator.writeStartObject();
+    generator.writeStringField("emsId", entry.emsId());
+    generator.writeStringField("nextPoll", entry.nextPoll().toString());
+    if (entry.lastPoll() != null) {
+      generator.writeStringField("lastPoll", entry.lastPoll().toString());
+    }
+    generator.writeEndObject();
+  }
+
+  /**
+   * Writes a metric. Rates are per second, timer durations in milliseconds.
+   *
+   * @param generator JSON generator
+   * @param name      metric name
+   * @param metric    metric
+   * @throws IOException if the metric cannot be written
+   */
+  public static void writeMetric(JsonGenerator generator, String name, Metric metric) throws IOException {
+    checkNotNull(metric, "Metric cannot be null");
+
+    generator.writeStartObject();
+    generator.writeStringField("name", name);
+    if (metric instanceof Gauge) {
+      generator.writeStringField("type", "gauge");
+      Object value = ((Gauge<?>) metric).getValue();
+      if (value instanceof Integer || value instanceof Long) {
+        generator.writeNumberField("value", ((Number) value).longValue());
+      } else if (value instanceof Number) {
+        generator.writeNumberField("value", ((Number) value).doubleValue());
+      } else if (value != null) {
+        generator.writeStringField("value", value.toString());
+      }
+    } else if (metric instanceof Counter) {
+      generator.writeStringField("type", "counter");
+      generator.writeNumberField("count", ((Counter) metric).getCount());
+    } else if (metric instanceof Timer) {
+      Timer timer = (Timer) metric;
+      generator.writeStringField("type", "timer");
+      writeRates(generator, timer);
+      writeSnapshot(generator, "duration", timer.getSnapshot(), NANOS_PER_MILLI);
+    } else if (metric instanceof Metered) {
+      generator.writeStringField("type", "meter");
+      writeRates(generator, (Metered) metric);
+    } else if (metric instanceof Histogram) {
+      Histogram histogram = (Histogram) metric;
+      generator.writeStringField("type", "histogram");
+      generator.writeNumberField("count", histogram.getCount());
+      writeSnapshot(generator, "values", histogram.getSnapshot(), 1);
+    }
+    generator.writeEndObject();
+  }
+
+  private static void writeRates(JsonGenerator generator, Metered metered) throws IOException {
+    generator.writeNumberField("count", metered.getCount());
+    generator.writeObjectFieldStart("rate");
+    generator.writeNumberField("mean", metered.getMeanRate());
+    generator.writeNumberField("m1", metered.getOneMinuteRate());
+    generator.writeNumberField("m5", metered.getFiveMinuteRate());
+    generator.writeNumberField("m15", metered.getFifteenMinuteRate());
+    generator.writeEndObject();
+  }
+
+  private static void writeSnapshot(JsonGenerator generator, String name, Snapshot snapshot, double scale)
+      throws IOException {
+    generator.writeObjectFieldStart(name);
+    generator.writeNumberField("min", snapshot.getMin() / scale);
+    generator.writeNumberField("mean", snapshot.getMean() / scale);
+    generator.writeNumberField("p50", snapshot.getMedian() / scale);
+    generator.writeNumberField("p95", snapshot.get95thPercentile() / scale);
+    generator.writeNumberField("p99", snapshot.get99thPercentile() / scale);
+    generator.writeNumberField("max", snapshot.getMax() / scale);
+    generator.writeEndObject();
+  }
+
+  private static void writeSeries(JsonGenerator generator, String name, DoubleBuffer values) throws IOException {
+    generator.writeArrayFieldStart(name);
+    while (values.hasRemaining()) {
+      generator.writeNumber(values.get());
+    }
+    generator.writeEndArray();
+  }
+
+  private static void writeAnnotations(JsonGenerator generator, Annotations annotations) throws IOException {
+    if (annotations == null || annotations.keys().isEmpty()) {
+      return;
+    }
+
+    generator.writeObjectFieldStart("annotations");
+    for (String key : annotations.keys()) {
+      generator.writeStringField(key, annotations.value(key));
+    }
+    generator.writeEndObject();
+  }
+}
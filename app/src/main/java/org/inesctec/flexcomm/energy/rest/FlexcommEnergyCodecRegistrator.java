@@ -3,6 +3,7 @@ package org.inesctec.flexcomm.energy.rest;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyAggregate;
 import org.inesctec.flexcomm.energy.api.EnergyPeriod;
 import org.onosproject.codec.CodecService;
 import org.osgi.service.component.annotations.Activate;
@@ -24,6 +25,7 @@ public class FlexcommEnergyCodecRegistrator {
   public void activate() {
     codecService.registerCodec(Energy.class, new EnergyCodec());
     codecService.registerCodec(EnergyPeriod.class, new EnergyPeriodCodec());
+    codecService.registerCodec(EnergyAggregate.class, new EnergyAggregateCodec());
 
     log.info("Started");
   }
@@ -32,6 +34,7 @@ public class FlexcommEnergyCodecRegistrator {
   public void deactivate() {
     codecService.unregisterCodec(Energy.class);
     codecService.unregisterCodec(EnergyPeriod.class);
+    codecService.unregisterCodec(EnergyAggregate.class);
 
     log.info("Stopped");
   }
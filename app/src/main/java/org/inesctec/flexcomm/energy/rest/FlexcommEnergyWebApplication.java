@@ -23,6 +23,6 @@ import java.util.Set;
 public class FlexcommEnergyWebApplication extends AbstractWebApplication {
   @Override
   public Set<Class<?>> getClasses() {
-    return getClasses(FlexcommEnergyWebResource.class);
+    return getClasses(FlexcommEnergyWebResource.class, CompressionInterceptor.class, RequestMetricsFilter.class);
   }
 }
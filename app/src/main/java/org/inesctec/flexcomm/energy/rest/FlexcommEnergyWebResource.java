@@ -15,11 +15,17 @@
  */
 package org.inesctec.flexcomm.energy.rest;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -27,58 +33,83 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyAggregate;
+import org.inesctec.flexcomm.energy.api.EnergyMetrics;
 import org.inesctec.flexcomm.energy.api.EnergyPeriod;
+import org.inesctec.flexcomm.energy.api.EnergyPoll;
+import org.inesctec.flexcomm.energy.api.EnergyQueryResult;
+import org.inesctec.flexcomm.energy.api.FlexcommEnergyPollingService;
 import org.inesctec.flexcomm.energy.api.FlexcommEnergyService;
+import org.onlab.metrics.MetricsService;
 import org.onosproject.net.DeviceId;
 import org.onosproject.rest.AbstractWebResource;
 
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.codahale.metrics.Metric;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
 
 @Path("")
 public class FlexcommEnergyWebResource extends AbstractWebResource {
 
-  private static final DateFormat REQUEST_TIMESTAMP_FORMATTER = new SimpleDateFormat("yyyy-MM-dd");
   private static final String TIMESTAMP_INVALID = "Timestamp is invalid";
+  private static final String EMS_ID_MISSING = "EMS identifier is required";
 
   @GET
   @Produces(MediaType.APPLICATION_JSON)
   public Response getEnergy(@QueryParam("ems") String emsId, @QueryParam("device") String deviceId,
       @QueryParam("timestamp") String timestamp) {
     final FlexcommEnergyService service = get(FlexcommEnergyService.class);
-    final ObjectNode root = mapper().createObjectNode();
-    final ArrayNode rootArrayNode = root.putArray("energy");
 
     Instant instant;
     try {
       instant = timestamp != null
-          ? REQUEST_TIMESTAMP_FORMATTER.parse(timestamp).toInstant().truncatedTo(ChronoUnit.DAYS)
+          ? LocalDate.parse(timestamp).atStartOfDay(ZoneOffset.UTC).toInstant()
           : null;
-    } catch (ParseException e) {
+    } catch (DateTimeParseException e) {
       throw new IllegalArgumentException(TIMESTAMP_INVALID);
     }
 
+    final Iterable<Energy> energyEntries;
+    Iterable<String> failedEmsIds = null;
     if (emsId != null) {
       final Energy energyEntry = instant == null ? service.getEnergy(emsId) : service.getEnergy(emsId, instant);
-      if (energyEntry != null) {
-        rootArrayNode.add(codec(Energy.class).encode(energyEntry, this));
-      }
+      energyEntries = energyEntry != null ? ImmutableList.of(energyEntry) : ImmutableList.of();
     } else if (deviceId != null) {
       final Energy energyEntry = instant == null ? service.getEnergy(DeviceId.deviceId(deviceId))
           : service.getEnergy(DeviceId.deviceId(deviceId), instant);
-      if (energyEntry != null) {
-        rootArrayNode.add(codec(Energy.class).encode(energyEntry, this));
-      }
+      energyEntries = energyEntry != null ? ImmutableList.of(energyEntry) : ImmutableList.of();
+    } else if (instant == null) {
+      final Iterable<Energy> entries = service.getEnergy();
+      energyEntries = entries != null ? entries : ImmutableList.of();
     } else {
-      final Iterable<Energy> energyEntries = instant == null ? service.getEnergy() : service.getEnergy(instant);
-      if (energyEntries != null) {
-        energyEntries.forEach(energyEntry -> rootArrayNode.add(codec(Energy.class).encode(energyEntry, this)));
-      }
+      final EnergyQueryResult result = service.queryEnergy(instant);
+      energyEntries = result.energy();
+      failedEmsIds = result.failedEmsIds();
     }
 
-    return ok(root).build();
+    final Iterable<String> failed = failedEmsIds;
+    return ok((StreamingOutput) output -> {
+      try (JsonGenerator generator = createGenerator(output)) {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("energy");
+        for (Energy energyEntry : energyEntries) {
+          EnergyJsonWriter.writeEnergy(generator, energyEntry);
+        }
+        generator.writeEndArray();
+        if (failed != null) {
+          generator.writeArrayFieldStart("failed");
+          for (String failedEmsId : failed) {
+            generator.writeString(failedEmsId);
+          }
+          generator.writeEndArray();
+        }
+        generator.writeEndObject();
+      }
+    }).build();
   }
 
   @GET
@@ -86,27 +117,146 @@ public class FlexcommEnergyWebResource extends AbstractWebResource {
   @Produces(MediaType.APPLICATION_JSON)
   public Response getCurrentEnergyPeriod(@QueryParam("ems") String emsId, @QueryParam("device") String deviceId) {
     final FlexcommEnergyService service = get(FlexcommEnergyService.class);
-    final ObjectNode root = mapper().createObjectNode();
-    final ArrayNode rootArrayNode = root.putArray("energy");
 
+    final Iterable<EnergyPeriod> energyEntries;
     if (emsId != null) {
       final EnergyPeriod energyEntry = service.getCurrentEnergyPeriod(emsId);
-      if (energyEntry != null) {
-        rootArrayNode.add(codec(EnergyPeriod.class).encode(energyEntry, this));
-      }
+      energyEntries = energyEntry != null ? ImmutableList.of(energyEntry) : ImmutableList.of();
     } else if (deviceId != null) {
       final EnergyPeriod energyEntry = service.getCurrentEnergyPeriod(DeviceId.deviceId(deviceId));
-      if (energyEntry != null) {
-        rootArrayNode.add(codec(EnergyPeriod.class).encode(energyEntry, this));
+      energyEntries = energyEntry != null ? ImmutableList.of(energyEntry) : ImmutableList.of();
+    } else {
+      final Iterable<EnergyPeriod> entries = service.getCurrentEnergyPeriod();
+      energyEntries = entries != null ? entries : ImmutableList.of();
+    }
+
+    return ok((StreamingOutput) output -> {
+      try (JsonGenerator generator = createGenerator(output)) {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("energy");
+        for (EnergyPeriod energyEntry : energyEntries) {
+          EnergyJsonWriter.writeEnergyPeriod(generator, energyEntry);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+      }
+    }).build();
+  }
+
+  @GET
+  @Path("range")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getEnergyRange(@QueryParam("ems") String emsId, @QueryParam("from") String from,
+      @QueryParam("to") String to) {
+    final FlexcommEnergyService service = get(FlexcommEnergyService.class);
+    if (emsId == null) {
+      throw new IllegalArgumentException(EMS_ID_MISSING);
+    }
+
+    Instant fromInstant;
+    Instant toInstant;
+    try {
+      LocalDate fromDay = LocalDate.parse(from);
+      LocalDate toDay = to != null ? LocalDate.parse(to) : fromDay;
+      fromInstant = fromDay.atStartOfDay(ZoneOffset.UTC).toInstant();
+      toInstant = toDay.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    } catch (DateTimeParseException | NullPointerException e) {
+      throw new IllegalArgumentException(TIMESTAMP_INVALID);
+    }
+
+    final List<EnergyPeriod> energyEntries = service.getEnergyPeriods(emsId, fromInstant, toInstant);
+
+    return ok((StreamingOutput) output -> {
+      try (JsonGenerator generator = createGenerator(output)) {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("energy");
+        for (EnergyPeriod energyEntry : energyEntries) {
+          EnergyJsonWriter.writeEnergyPeriod(generator, energyEntry);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
       }
+    }).build();
+  }
+
+  @GET
+  @Path("aggregate")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getEnergyAggregate(@QueryParam("ems") List<String> emsIds,
+      @QueryParam("device") List<String> deviceIds) {
+    final FlexcommEnergyService service = get(FlexcommEnergyService.class);
+
+    final EnergyAggregate aggregate;
+    if (emsIds.isEmpty() && deviceIds.isEmpty()) {
+      aggregate = service.getEnergyAggregate();
     } else {
-      final Iterable<EnergyPeriod> energyEntries = service.getCurrentEnergyPeriod();
-      if (energyEntries != null) {
-        energyEntries.forEach(energyEntry -> rootArrayNode.add(codec(EnergyPeriod.class).encode(energyEntry, this)));
+      final Set<String> selected = Sets.newHashSet(emsIds);
+      for (String deviceId : deviceIds) {
+        final Energy energyEntry = service.getEnergy(DeviceId.deviceId(deviceId));
+        if (energyEntry != null) {
+          selected.add(energyEntry.emsId());
+        }
+      }
+      aggregate = service.getEnergyAggregate(selected);
+    }
+
+    return ok((StreamingOutput) output -> {
+      try (JsonGenerator generator = createGenerator(output)) {
+        EnergyJsonWriter.writeEnergyAggregate(generator, aggregate);
+      }
+    }).build();
+  }
+
+  @GET
+  @Path("schedule")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getPollSchedule() {
+    final FlexcommEnergyPollingService service = get(FlexcommEnergyPollingService.class);
+    final List<EnergyPoll> pollEntries = service.getPollSchedule();
+    final boolean ready = service.isReady();
+
+    return ok((StreamingOutput) output -> {
+      try (JsonGenerator generator = createGenerator(output)) {
+        generator.writeStartObject();
+        generator.writeBooleanField("ready", ready);
+        generator.writeArrayFieldStart("schedule");
+        for (EnergyPoll pollEntry : pollEntries) {
+          EnergyJsonWriter.writeEnergyPoll(generator, pollEntry);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+      }
+    }).build();
+  }
+
+  @GET
+  @Path("stats")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getStats() {
+    final String prefix = EnergyMetrics.COMPONENT + ".";
+    final SortedMap<String, Metric> metrics = new TreeMap<>();
+    for (Map.Entry<String, Metric> entry : get(MetricsService.class).getMetrics().entrySet()) {
+      if (entry.getKey().startsWith(prefix)) {
+        metrics.put(entry.getKey().substring(prefix.length()), entry.getValue());
       }
     }
 
-    return ok(root).build();
+    return ok((StreamingOutput) output -> {
+      try (JsonGenerator generator = createGenerator(output)) {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("metrics");
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+          EnergyJsonWriter.writeMetric(generator, entry.getKey(), entry.getValue());
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+      }
+    }).build();
+  }
+
+  private JsonGenerator createGenerator(OutputStream output) throws IOException {
+    return mapper().getFactory().createGenerator(output)
+        .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
   }
 
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2024-present Open Networking Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inesctec.flexcomm.energy.rest;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.inesctec.flexcomm.energy.api.EnergyMetrics;
+import org.onlab.metrics.MetricsComponent;
+import org.onlab.metrics.MetricsFeature;
+import org.onlab.metrics.MetricsService;
+import org.onlab.osgi.DefaultServiceDirectory;
+
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Times every request of {@link FlexcommEnergyWebResource}, one timer per
+ * endpoint under the Rest feature.
+ * <p>
+ * Streamed responses are written after the resource method returns, so the
+ * time is taken once the entity, compression included, has been written.
+ * Timers are registered when the filter is created, so timing a request
+ * only stores its start time as a request property.
+ */
+@Provider
+@Priority(Priorities.HEADER_DECORATOR)
+public class RequestMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+  private static final String METRICS_FEATURE_REST = "Rest";
+
+  private static final String START_PROPERTY = RequestMetricsFilter.class.getName() + ".start";
+
+  @Context
+  private ResourceInfo resourceInfo;
+
+  private final Map<Method, Timer> timers;
+
+  /**
+   * Creates the filter with the metrics service of the running instance.
+   */
+  public RequestMetricsFilter() {
+    this(DefaultServiceDirectory.getService(MetricsService.class), FlexcommEnergyWebResource.class);
+  }
+
+  RequestMetricsFilter(MetricsService metricsService, Class<?> resource) {
+    MetricsComponent component = metricsService.registerComponent(EnergyMetrics.COMPONENT);
+    MetricsFeature feature = component.registerFeature(METRICS_FEATURE_REST);
+    ImmutableMap.Builder<Method, Timer> builder = ImmutableMap.builder();
+    for (Method method : resource.getMethods()) {
+      if (isResourceMethod(method)) {
+        builder.put(method, EnergyMetrics.timer(metricsService, component, feature, method.getName()));
+      }
+    }
+    timers = builder.build();
+  }
+
+  private static boolean isResourceMethod(Method method) {
+    for (Annotation annotation : method.getAnnotations()) {
+      if (annotation.annotationType().isAnnotationPresent(HttpMethod.class)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void filter(ContainerRequestContext request) {
+    request.setProperty(START_PROPERTY, System.nanoTime());
+  }
+
+  @Override
+  public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+    if (!response.hasEntity()) {
+      record(request.getProperty(START_PROPERTY));
+      request.removeProperty(START_PROPERTY);
+    }
+  }
+
+  @Override
+  public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+    try {
+      context.proceed();
+    } finally {
+      record(context.getProperty(START_PROPERTY));
+      context.removeProperty(START_PROPERTY);
+    }
+  }
+
+  // The property is removed once recorded, so a request is timed only once
+  private void record(Object start) {
+    Method method = resourceInfo.getResourceMethod();
+    Timer timer = method != null ? timers.get(method) : null;
+    if (start instanceof Long && timer != null) {
+      timer.update(System.nanoTime() - (Long) start, TimeUnit.NANOSECONDS);
+    }
+  }
+}
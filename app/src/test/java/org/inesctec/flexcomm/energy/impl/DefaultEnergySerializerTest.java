@@ -0,0 +1,138 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+import org.junit.Test;
+import org.onlab.util.KryoNamespace;
+import org.onosproject.net.DefaultAnnotations;
+import org.onosproject.store.serializers.KryoNamespaces;
+
+/**
+ * Tests of the compact energy serializer.
+ */
+public class DefaultEnergySerializerTest {
+
+  private static final int SLOTS = 96;
+
+  private static Energy energy() {
+    double[] flexibility = new double[SLOTS];
+    double[] estimate = new double[SLOTS];
+    for (int i = 0; i < SLOTS; ++i) {
+      flexibility[i] = i * 1.125;
+      estimate[i] = i % 7 == 0 ? Double.NaN : 250 - i * 0.5;
+    }
+    return DefaultEnergy.builder()
+        .setEmsId("ems-00042")
+        .setTimestamp(Instant.parse("2024-05-01T00:00:00Z"))
+        .setFlexibilityArray(flexibility)
+        .setEstimateArray(estimate)
+        .setAnnotations(DefaultAnnotations.builder()
+            .set("site", "porto")
+            .set("unit", "kW")
+            .build())
+        .build();
+  }
+
+  @Test
+  public void testRoundTrip() {
+    Energy energy = energy();
+    KryoNamespace serializer = DistributedFlexcommEnergyStore.SERIALIZER_BUILDER.build();
+
+    Energy copy = serializer.deserialize(serializer.serialize(energy));
+
+    assertThat(copy, is(energy));
+    assertThat(copy.timestamp(), is(energy.timestamp()));
+    assertThat(copy.annotations().value("site"), is("porto"));
+    assertThat(copy.annotations().value("unit"), is("kW"));
+    assertThat(Double.isNaN(copy.estimateAt(0)), is(true));
+    assertThat(Double.isNaN(copy.estimateAt(7)), is(true));
+  }
+
+  @Test
+  public void testRoundTripOffMidnight() {
+    Energy energy = DefaultEnergy.builder()
+        .setEmsId("ems-1")
+        .setTimestamp(Instant.parse("1969-12-31T23:59:59.123456789Z"))
+        .setFlexibilityArray(new double[] {0.5})
+        .setEstimateArray(new double[] {Double.NaN})
+        .build();
+    KryoNamespace serializer = DistributedFlexcommEnergyStore.SERIALIZER_BUILDER.build();
+
+    Energy copy = serializer.deserialize(serializer.serialize(energy));
+
+    assertThat(copy, is(energy));
+    assertThat(copy.timestamp(), is(energy.timestamp()));
+  }
+
+  @Test
+  public void testSinglePrecisionRoundTrip() {
+    Energy energy = energy();
+    KryoNamespace serializer = KryoNamespace.newBuilder()
+        .register(KryoNamespaces.API)
+        .register(new DefaultEnergySerializer(true), DefaultEnergy.class)
+        .build();
+
+    Energy copy = serializer.deserialize(serializer.serialize(energy));
+
+    assertThat(copy.emsId(), is(energy.emsId()));
+    assertThat(copy.slotCount(), is(SLOTS));
+    for (int i = 0; i < SLOTS; ++i) {
+      assertThat(copy.flexibilityAt(i), closeTo(energy.flexibilityAt(i), 1e-3));
+      if (Double.isNaN(energy.estimateAt(i))) {
+        assertThat(Double.isNaN(copy.estimateAt(i)), is(true));
+      } else {
+        assertThat(copy.estimateAt(i), closeTo(energy.estimateAt(i), 1e-3));
+      }
+    }
+  }
+
+  @Test
+  public void testSmallerThanGenericKryo() {
+    Energy energy = energy();
+    KryoNamespace generic = KryoNamespace.newBuilder()
+        .register(KryoNamespaces.API)
+        .register(Instant.class)
+        .register(DefaultEnergy.class)
+        .build();
+    KryoNamespace compact = DistributedFlexcommEnergyStore.SERIALIZER_BUILDER.build();
+    KryoNamespace single = KryoNamespace.newBuilder()
+        .register(KryoNamespaces.API)
+        .register(new DefaultEnergySerializer(true), DefaultEnergy.class)
+        .build();
+
+    int genericSize = generic.serialize(energy).length;
+    int compactSize = compact.serialize(energy).length;
+    int singleSize = single.serialize(energy).length;
+
+    assertThat(generic.deserialize(generic.serialize(energy)), is(energy));
+    assertThat(compactSize, lessThan(genericSize));
+    assertThat(singleSize, lessThan(compactSize));
+    // Both series dominate: half of them is saved in single precision
+    assertThat(compactSize - singleSize, is(2 * SLOTS * (Double.BYTES - Float.BYTES)));
+  }
+
+  @Test
+  public void testSizeListener() {
+    Energy energy = energy();
+    AtomicLong written = new AtomicLong();
+    KryoNamespace serializer = KryoNamespace.newBuilder()
+        .register(KryoNamespaces.API)
+        .register(new DefaultEnergySerializer(false, written::addAndGet), DefaultEnergy.class)
+        .build();
+
+    byte[] bytes = serializer.serialize(energy);
+
+    // The namespace adds the class id in front of the energy
+    assertThat(written.get(), lessThan((long) bytes.length));
+    assertThat(written.get(), greaterThan(0L));
+  }
+}
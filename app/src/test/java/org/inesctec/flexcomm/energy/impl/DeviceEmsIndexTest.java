@@ -0,0 +1,111 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.onosproject.net.DeviceId.deviceId;
+
+import org.junit.Test;
+import org.onosproject.net.DeviceId;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests of the device to EMS index.
+ */
+public class DeviceEmsIndexTest {
+
+  private static final DeviceId DEV1 = deviceId("of:0000000000000001");
+  private static final DeviceId DEV2 = deviceId("of:0000000000000002");
+  private static final String EMS1 = "ems-1";
+  private static final String EMS2 = "ems-2";
+
+  private final DeviceEmsIndex index = new DeviceEmsIndex();
+
+  @Test
+  public void testAdd() {
+    DeviceEmsIndex.Change change = index.put(DEV1, EMS1);
+    assertThat(change.added(), is(EMS1));
+    assertThat(change.released(), is(nullValue()));
+
+    change = index.put(DEV2, EMS1);
+    assertThat(change.added(), is(nullValue()));
+    assertThat(change.released(), is(nullValue()));
+
+    assertThat(index.emsId(DEV1), is(EMS1));
+    assertThat(index.emsId(DEV2), is(EMS1));
+    assertThat(index.contains(EMS1), is(true));
+    assertThat(index.emsIds(), is(ImmutableSet.of(EMS1)));
+    assertThat(index.devices(EMS1), is(ImmutableSet.of(DEV1, DEV2)));
+  }
+
+  @Test
+  public void testUpdateWithSameEms() {
+    index.put(DEV1, EMS1);
+
+    DeviceEmsIndex.Change change = index.put(DEV1, EMS1);
+    assertThat(change.added(), is(nullValue()));
+    assertThat(change.released(), is(nullValue()));
+    assertThat(index.devices(EMS1), is(ImmutableSet.of(DEV1)));
+  }
+
+  @Test
+  public void testAnnotationChangeMovesLastDevice() {
+    index.put(DEV1, EMS1);
+
+    DeviceEmsIndex.Change change = index.put(DEV1, EMS2);
+    assertThat(change.added(), is(EMS2));
+    assertThat(change.released(), is(EMS1));
+
+    assertThat(index.emsId(DEV1), is(EMS2));
+    assertThat(index.contains(EMS1), is(false));
+    assertThat(index.devices(EMS1), is(empty()));
+    assertThat(index.emsIds(), is(ImmutableSet.of(EMS2)));
+  }
+
+  @Test
+  public void testAnnotationChangeKeepsSharedEms() {
+    index.put(DEV1, EMS1);
+    index.put(DEV2, EMS1);
+
+    DeviceEmsIndex.Change change = index.put(DEV1, EMS2);
+    assertThat(change.added(), is(EMS2));
+    assertThat(change.released(), is(nullValue()));
+    assertThat(index.devices(EMS1), is(ImmutableSet.of(DEV2)));
+    assertThat(index.devices(EMS2), is(ImmutableSet.of(DEV1)));
+
+    change = index.put(DEV2, EMS2);
+    assertThat(change.added(), is(nullValue()));
+    assertThat(change.released(), is(EMS1));
+    assertThat(index.emsIds(), is(ImmutableSet.of(EMS2)));
+  }
+
+  @Test
+  public void testRemove() {
+    index.put(DEV1, EMS1);
+    index.put(DEV2, EMS1);
+
+    assertThat(index.remove(DEV1), is(nullValue()));
+    assertThat(index.emsId(DEV1), is(nullValue()));
+    assertThat(index.contains(EMS1), is(true));
+
+    assertThat(index.remove(DEV2), is(EMS1));
+    assertThat(index.contains(EMS1), is(false));
+    assertThat(index.emsIds(), is(empty()));
+
+    assertThat(index.remove(DEV2), is(nullValue()));
+  }
+
+  @Test
+  public void testClear() {
+    index.put(DEV1, EMS1);
+    index.put(DEV2, EMS2);
+
+    index.clear();
+    assertThat(index.emsId(DEV1), is(nullValue()));
+    assertThat(index.emsIds(), is(empty()));
+
+    assertThat(index.put(DEV1, EMS1).added(), is(EMS1));
+  }
+}
@@ -0,0 +1,143 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Random;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyAggregate;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Tests of the incremental fleet-wide energy aggregate.
+ */
+public class EnergyAggregatorTest {
+
+  private static final Instant DAY = Instant.parse("2024-05-01T00:00:00Z");
+  private static final double DELTA = 1e-9;
+
+  private final EnergyAggregator aggregator = new EnergyAggregator();
+
+  private static Energy energy(String emsId, Instant timestamp, double... flexibility) {
+    double[] estimate = new double[flexibility.length];
+    for (int i = 0; i < flexibility.length; ++i) {
+      estimate[i] = flexibility[i] * 2;
+    }
+    return DefaultEnergy.builder()
+        .setEmsId(emsId)
+        .setTimestamp(timestamp)
+        .setFlexibilityArray(flexibility)
+        .setEstimateArray(estimate)
+        .build();
+  }
+
+  private static void assertSameAggregate(EnergyAggregate actual, EnergyAggregate expected) {
+    assertThat(actual.slotCount(), is(expected.slotCount()));
+    for (int slot = 0; slot < expected.slotCount(); ++slot) {
+      assertThat(actual.count(slot), is(expected.count(slot)));
+      assertThat(actual.flexibilitySum(slot), closeTo(expected.flexibilitySum(slot), DELTA));
+      assertThat(actual.flexibilityMin(slot), is(expected.flexibilityMin(slot)));
+      assertThat(actual.flexibilityMax(slot), is(expected.flexibilityMax(slot)));
+      assertThat(actual.estimateSum(slot), closeTo(expected.estimateSum(slot), DELTA));
+      assertThat(actual.estimateMin(slot), is(expected.estimateMin(slot)));
+      assertThat(actual.estimateMax(slot), is(expected.estimateMax(slot)));
+    }
+  }
+
+  @Test
+  public void testAggregate() {
+    aggregator.update(energy("ems-1", DAY, 1, 4, 2));
+    aggregator.update(energy("ems-2", DAY, 3, 0));
+    EnergyAggregate aggregate = aggregator.aggregate();
+
+    assertThat(aggregate.slotCount(), is(3));
+    assertThat(aggregate.count(0), is(2));
+    assertThat(aggregate.count(2), is(1));
+    assertThat(aggregate.flexibilitySum(0), is(4.0));
+    assertThat(aggregate.flexibilityMin(1), is(0.0));
+    assertThat(aggregate.flexibilityMax(1), is(4.0));
+    assertThat(aggregate.estimateSum(1), is(8.0));
+    assertThat(aggregate.flexibilityMax(2), is(2.0));
+  }
+
+  @Test
+  public void testReplaceExtremes() {
+    aggregator.update(energy("ems-1", DAY, 1, 9));
+    aggregator.update(energy("ems-2", DAY, 5, 5));
+    aggregator.aggregate();
+
+    EnergyPatch patch = aggregator.update(energy("ems-1", DAY, 1, 6));
+    assertThat(patch.isFull(), is(false));
+    assertThat(patch.size(), is(1));
+
+    EnergyAggregate aggregate = aggregator.aggregate();
+    assertThat(aggregate.flexibilityMax(1), is(6.0));
+    assertThat(aggregate.flexibilityMin(1), is(5.0));
+    assertThat(aggregate.flexibilitySum(1), is(11.0));
+    assertThat(aggregate.flexibilityMin(0), is(1.0));
+  }
+
+  @Test
+  public void testRemove() {
+    aggregator.update(energy("ems-1", DAY, 1, 2, 3));
+    aggregator.update(energy("ems-2", DAY, 7));
+
+    aggregator.remove("ems-1");
+    EnergyAggregate aggregate = aggregator.aggregate();
+    assertThat(aggregate.slotCount(), is(1));
+    assertThat(aggregate.flexibilityMin(0), is(7.0));
+    assertThat(aggregate.flexibilitySum(0), is(7.0));
+
+    aggregator.remove("ems-2");
+    assertThat(aggregator.aggregate().slotCount(), is(0));
+  }
+
+  @Test
+  public void testCachedUntilChanged() {
+    Energy energy = energy("ems-1", DAY, 1, 2);
+    aggregator.update(energy);
+    EnergyAggregate aggregate = aggregator.aggregate();
+
+    aggregator.update(energy("ems-1", DAY, 1, 2));
+    assertThat(aggregator.aggregate(), is(sameInstance(aggregate)));
+
+    aggregator.update(energy("ems-1", DAY.plusSeconds(86400), 1, 2));
+    assertThat(aggregator.aggregate(), is(not(sameInstance(aggregate))));
+
+    aggregator.clear();
+    assertThat(aggregator.aggregate().slotCount(), is(0));
+  }
+
+  @Test
+  public void testIncrementalMatchesRebuild() {
+    Random random = new Random(42);
+    Map<String, Energy> current = Maps.newHashMap();
+    for (int i = 0; i < 500; ++i) {
+      String emsId = "ems-" + random.nextInt(8);
+      if (random.nextInt(10) == 0) {
+        aggregator.remove(emsId);
+        current.remove(emsId);
+      } else {
+        double[] values = new double[1 + random.nextInt(6)];
+        for (int slot = 0; slot < values.length; ++slot) {
+          values[slot] = random.nextInt(20) / 4.0;
+        }
+        Instant day = DAY.plusSeconds(86400L * random.nextInt(2));
+        Energy energy = energy(emsId, day, values);
+        aggregator.update(energy);
+        current.put(emsId, energy);
+      }
+
+      assertSameAggregate(aggregator.aggregate(), EnergyAggregator.aggregate(current.values()));
+    }
+  }
+}
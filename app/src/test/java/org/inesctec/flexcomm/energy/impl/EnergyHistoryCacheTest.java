@@ -0,0 +1,89 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+import org.junit.Test;
+
+/**
+ * Tests of the history cache and the counters it exposes as metrics.
+ */
+public class EnergyHistoryCacheTest {
+
+  private static final String EMS_ID = "ems-1";
+  private static final Instant PAST_DAY = Instant.now().truncatedTo(ChronoUnit.DAYS).minus(2, ChronoUnit.DAYS);
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private Energy load(String emsId, Instant timestamp) {
+    loads.incrementAndGet();
+    return DefaultEnergy.builder()
+        .setEmsId(emsId)
+        .setTimestamp(timestamp)
+        .setFlexibilityArray(new double[] {1})
+        .setEstimateArray(new double[] {1})
+        .build();
+  }
+
+  private Energy loadNothing(String emsId, Instant timestamp) {
+    loads.incrementAndGet();
+    return null;
+  }
+
+  @Test
+  public void testPastDayIsCached() {
+    EnergyHistoryCache cache = new EnergyHistoryCache(10, 60, TimeUnit.SECONDS);
+
+    Energy first = cache.get(EMS_ID, PAST_DAY, this::load);
+    Energy second = cache.get(EMS_ID, PAST_DAY.plusSeconds(60), this::load);
+
+    assertThat(second, is(first));
+    assertThat(loads.get(), is(1));
+    assertThat(cache.size(), is(1L));
+    assertThat(cache.stats().hitCount(), is(1L));
+    assertThat(cache.stats().missCount(), is(1L));
+  }
+
+  @Test
+  public void testCurrentDayBypassesCache() {
+    EnergyHistoryCache cache = new EnergyHistoryCache(10, 60, TimeUnit.SECONDS);
+
+    cache.get(EMS_ID, Instant.now(), this::load);
+    cache.get(EMS_ID, Instant.now(), this::load);
+
+    assertThat(loads.get(), is(2));
+    assertThat(cache.size(), is(0L));
+    assertThat(cache.bypassCount(), is(2L));
+  }
+
+  @Test
+  public void testMissingDayIsRemembered() {
+    EnergyHistoryCache cache = new EnergyHistoryCache(10, 60, TimeUnit.SECONDS);
+
+    assertThat(cache.get(EMS_ID, PAST_DAY, this::loadNothing), is(nullValue()));
+    assertThat(cache.get(EMS_ID, PAST_DAY, this::loadNothing), is(nullValue()));
+
+    assertThat(loads.get(), is(1));
+    assertThat(cache.negativeHitCount(), is(1L));
+  }
+
+  @Test
+  public void testExpiredMissingDayIsReloaded() throws InterruptedException {
+    EnergyHistoryCache cache = new EnergyHistoryCache(10, 0, TimeUnit.SECONDS);
+
+    cache.get(EMS_ID, PAST_DAY, this::loadNothing);
+    Thread.sleep(5);
+    cache.get(EMS_ID, PAST_DAY, this::loadNothing);
+
+    assertThat(loads.get(), is(2));
+    assertThat(cache.negativeHitCount(), is(0L));
+  }
+}
@@ -0,0 +1,66 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.time.Instant;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+import org.junit.Test;
+import org.onosproject.net.DefaultAnnotations;
+
+/**
+ * Tests of slot diffs between energies.
+ */
+public class EnergyPatchTest {
+
+  private static final Instant DAY = Instant.parse("2024-05-01T00:00:00Z");
+
+  private static Energy energy(Instant timestamp, double... values) {
+    return DefaultEnergy.builder()
+        .setEmsId("ems-1")
+        .setTimestamp(timestamp)
+        .setFlexibilityArray(values)
+        .setEstimateArray(values)
+        .build();
+  }
+
+  @Test
+  public void testFull() {
+    Energy energy = energy(DAY, 1, 2);
+
+    assertThat(EnergyPatch.diff(null, energy).isFull(), is(true));
+    assertThat(EnergyPatch.diff(energy(DAY.minusSeconds(86400), 1, 2), energy).isFull(), is(true));
+    assertThat(EnergyPatch.diff(energy(DAY, 1, 2, 3), energy).isFull(), is(true));
+    assertThat(EnergyPatch.diff(null, energy).nextSlot(0), is(-1));
+  }
+
+  @Test
+  public void testChangedSlots() {
+    EnergyPatch patch = EnergyPatch.diff(energy(DAY, 1, 2, 3, Double.NaN), energy(DAY, 1, 5, 3, 4));
+
+    assertThat(patch.isFull(), is(false));
+    assertThat(patch.isEmpty(), is(false));
+    assertThat(patch.size(), is(2));
+    assertThat(patch.nextSlot(0), is(1));
+    assertThat(patch.nextSlot(2), is(3));
+    assertThat(patch.nextSlot(4), is(-1));
+  }
+
+  @Test
+  public void testEmpty() {
+    assertThat(EnergyPatch.diff(energy(DAY, 1, Double.NaN), energy(DAY, 1, Double.NaN)).isEmpty(), is(true));
+
+    Energy annotated = DefaultEnergy.builder()
+        .setEmsId("ems-1")
+        .setTimestamp(DAY)
+        .setFlexibilityArray(new double[] {1, Double.NaN})
+        .setEstimateArray(new double[] {1, Double.NaN})
+        .setAnnotations(DefaultAnnotations.builder().set("site", "porto").build())
+        .build();
+    EnergyPatch patch = EnergyPatch.diff(energy(DAY, 1, Double.NaN), annotated);
+    assertThat(patch.isEmpty(), is(false));
+    assertThat(patch.size(), is(0));
+  }
+}
@@ -0,0 +1,91 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.time.Instant;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests of the current energy period snapshot.
+ */
+public class EnergyPeriodSnapshotTest {
+
+  private static final Instant DAY = Instant.parse("2024-05-01T00:00:00Z");
+  private static final long FIRST_SLOT = EnergyPeriodSnapshot.epochSlot(DAY);
+
+  private static Energy energy(String emsId, double... values) {
+    return DefaultEnergy.builder()
+        .setEmsId(emsId)
+        .setTimestamp(DAY)
+        .setFlexibilityArray(values)
+        .setEstimateArray(values)
+        .build();
+  }
+
+  @Test
+  public void testPeriodOfSlot() {
+    EnergyPeriodSnapshot snapshot = EnergyPeriodSnapshot.of(FIRST_SLOT + 1,
+        ImmutableList.of(energy("ems-a", 1, 2), energy("ems-b", 3)));
+
+    assertThat(snapshot.period("ems-a").flexibility(), is(2.0));
+    assertThat(snapshot.period("ems-a").timestamp(), is(DAY.plusSeconds(EnergyPeriodSnapshot.SLOT_SECONDS)));
+    assertThat(snapshot.period("ems-b"), is(nullValue()));
+    assertThat(snapshot.periods().size(), is(1));
+    assertThat(snapshot.isCurrent(DAY.plusSeconds(EnergyPeriodSnapshot.SLOT_SECONDS + 1)), is(true));
+  }
+
+  @Test
+  public void testWithAndWithout() {
+    EnergyPeriodSnapshot snapshot = EnergyPeriodSnapshot.of(FIRST_SLOT + 1,
+        ImmutableList.of(energy("ems-a", 0, 1)));
+
+    EnergyPeriodSnapshot updated = snapshot.with(energy("ems-a", 0, 5));
+    assertThat(updated.period("ems-a").flexibility(), is(5.0));
+    assertThat(snapshot.period("ems-a").flexibility(), is(1.0));
+
+    // An energy without the current slot drops the period
+    updated = updated.with(ImmutableList.of(energy("ems-b", 0, 2), energy("ems-a", 0)));
+    assertThat(updated.period("ems-a"), is(nullValue()));
+    assertThat(updated.period("ems-b").flexibility(), is(2.0));
+
+    assertThat(updated.without("ems-b").periods(), is(empty()));
+    assertThat(updated.without("ems-c"), is(updated));
+  }
+
+  @Test
+  public void testValueChangesAcrossSlots() {
+    ImmutableList<Energy> energies = ImmutableList.of(
+        energy("same", 1, 1),
+        energy("changed", 1, 2),
+        energy("ended", 1),
+        energy("nan", Double.NaN, Double.NaN));
+    EnergyPeriodSnapshot ended = EnergyPeriodSnapshot.of(FIRST_SLOT, energies);
+    EnergyPeriodSnapshot current = EnergyPeriodSnapshot.of(FIRST_SLOT + 1,
+        ImmutableList.<Energy>builder().addAll(energies).add(energy("new", 0, 4)).build());
+
+    assertThat(current.valueChanges(ended), is(ImmutableSet.of("changed", "new", "ended")));
+    assertThat(current.valueChanges(current), is(empty()));
+    assertThat(current.valueChanges(EnergyPeriodSnapshot.EMPTY),
+        is(ImmutableSet.of("same", "changed", "nan", "new")));
+  }
+
+  @Test
+  public void testSamePeriodComparesTimestamp() {
+    EnergyPeriodSnapshot first = EnergyPeriodSnapshot.of(FIRST_SLOT, ImmutableList.of(energy("ems-a", 1, 1)));
+    EnergyPeriodSnapshot second = EnergyPeriodSnapshot.of(FIRST_SLOT + 1, ImmutableList.of(energy("ems-a", 1, 1)));
+
+    assertThat(EnergyPeriodSnapshot.samePeriod(first.period("ems-a"), second.period("ems-a")), is(false));
+    assertThat(EnergyPeriodSnapshot.sameValue(first.period("ems-a"), second.period("ems-a")), is(true));
+    assertThat(EnergyPeriodSnapshot.sameValue(null, null), is(true));
+    assertThat(EnergyPeriodSnapshot.sameValue(first.period("ems-a"), null), is(false));
+  }
+}
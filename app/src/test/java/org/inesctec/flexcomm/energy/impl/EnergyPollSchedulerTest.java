@@ -0,0 +1,137 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.inesctec.flexcomm.energy.api.EnergyPoll;
+import org.junit.Test;
+
+/**
+ * Tests of the daily EMS poll schedule.
+ */
+public class EnergyPollSchedulerTest {
+
+  private static final Instant MIDNIGHT = Instant.parse("2024-05-01T00:00:00Z");
+  private static final Duration OFFSET = Duration.ofMinutes(5);
+  private static final Duration WINDOW = Duration.ofMinutes(30);
+  private static final double FAST = 1000;
+
+  private static EnergyPollScheduler scheduler(double rate) {
+    return new EnergyPollScheduler(OFFSET.toMinutes(), WINDOW.toMinutes(), TimeUnit.MINUTES, rate);
+  }
+
+  private static Instant nextPoll(EnergyPollScheduler scheduler, String emsId) {
+    return scheduler.schedule().stream().filter(p -> p.emsId().equals(emsId)).findFirst().get().nextPoll();
+  }
+
+  // The bucket starts empty and refills over time, so due polls may take a few calls
+  private static List<List<String>> takeAll(EnergyPollScheduler scheduler, Instant now, int batchSize, int total)
+      throws InterruptedException {
+    List<List<String>> batches = new ArrayList<>();
+    while (batches.stream().mapToInt(List::size).sum() < total) {
+      batches.addAll(scheduler.takeDue(now, batchSize));
+      Thread.sleep(1);
+    }
+    return batches;
+  }
+
+  @Test
+  public void testWithinWindow() {
+    EnergyPollScheduler scheduler = scheduler(FAST);
+    for (int i = 0; i < 50; ++i) {
+      scheduler.add("ems-" + i, MIDNIGHT);
+    }
+
+    for (EnergyPoll poll : scheduler.schedule()) {
+      assertThat(poll.nextPoll(), greaterThanOrEqualTo(MIDNIGHT.plus(OFFSET)));
+      assertThat(poll.nextPoll(), lessThan(MIDNIGHT.plus(OFFSET).plus(WINDOW)));
+      assertThat(poll.lastPoll(), is(nullValue()));
+    }
+  }
+
+  @Test
+  public void testSameSlotEveryDay() {
+    EnergyPollScheduler today = scheduler(FAST);
+    today.add("ems-1", MIDNIGHT);
+    EnergyPollScheduler tomorrow = scheduler(FAST);
+    tomorrow.add("ems-1", MIDNIGHT.plus(Duration.ofDays(1)));
+
+    assertThat(nextPoll(tomorrow, "ems-1"), is(nextPoll(today, "ems-1").plus(Duration.ofDays(1))));
+  }
+
+  @Test
+  public void testAddedAfterSlotPollsTomorrow() {
+    EnergyPollScheduler scheduler = scheduler(FAST);
+    Instant late = MIDNIGHT.plus(OFFSET).plus(WINDOW);
+    scheduler.add("ems-1", late);
+
+    assertThat(nextPoll(scheduler, "ems-1"), greaterThanOrEqualTo(MIDNIGHT.plus(Duration.ofDays(1))));
+  }
+
+  @Test
+  public void testTakeDue() throws InterruptedException {
+    EnergyPollScheduler scheduler = scheduler(FAST);
+    for (int i = 0; i < 5; ++i) {
+      scheduler.add("ems-" + i, MIDNIGHT);
+    }
+
+    assertThat(scheduler.takeDue(MIDNIGHT, 2), is(empty()));
+
+    Instant end = MIDNIGHT.plus(OFFSET).plus(WINDOW);
+    List<List<String>> batches = takeAll(scheduler, end, 2, 5);
+    assertThat(batches.stream().map(List::size).collect(Collectors.toList()), contains(2, 2, 1));
+    assertThat(scheduler.takeDue(end, 2), is(empty()));
+
+    for (EnergyPoll poll : scheduler.schedule()) {
+      assertThat(poll.lastPoll(), is(end));
+      assertThat(poll.nextPoll(), greaterThanOrEqualTo(MIDNIGHT.plus(Duration.ofDays(1))));
+    }
+  }
+
+  @Test
+  public void testRateLimited() {
+    EnergyPollScheduler scheduler = scheduler(0.001);
+    for (int i = 0; i < 3; ++i) {
+      scheduler.add("ems-" + i, MIDNIGHT);
+    }
+
+    Instant end = MIDNIGHT.plus(OFFSET).plus(WINDOW);
+    assertThat(scheduler.takeDue(end, 1).size(), is(1));
+    assertThat(scheduler.takeDue(end, 1), is(empty()));
+  }
+
+  @Test
+  public void testRemoved() {
+    EnergyPollScheduler scheduler = scheduler(FAST);
+    scheduler.add("ems-1", MIDNIGHT);
+    scheduler.add("ems-2", MIDNIGHT);
+    scheduler.remove("ems-1");
+
+    List<List<String>> batches = scheduler.takeDue(MIDNIGHT.plus(Duration.ofDays(1)), 10);
+    assertThat(batches, contains(contains("ems-2")));
+  }
+
+  @Test
+  public void testConfigureMovesPolls() {
+    EnergyPollScheduler scheduler = scheduler(FAST);
+    scheduler.add("ems-1", MIDNIGHT);
+    scheduler.configure(2, 1, TimeUnit.HOURS, FAST, MIDNIGHT);
+
+    Instant next = nextPoll(scheduler, "ems-1");
+    assertThat(next, greaterThanOrEqualTo(MIDNIGHT.plus(Duration.ofHours(2))));
+    assertThat(next, lessThan(MIDNIGHT.plus(Duration.ofHours(3))));
+    assertThat(scheduler.schedule().size(), is(1));
+  }
+}
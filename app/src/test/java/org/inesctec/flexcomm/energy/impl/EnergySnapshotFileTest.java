@@ -0,0 +1,77 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests of the energy snapshot file.
+ */
+public class EnergySnapshotFileTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final Energy SHORT = DefaultEnergy.builder()
+      .setEmsId("ems-1")
+      .setTimestamp(Instant.parse("2024-05-01T00:00:00Z"))
+      .setFlexibilityArray(new double[] {1.5, Double.NaN})
+      .setEstimateArray(new double[] {2.5})
+      .build();
+
+  private static final Energy LONG = DefaultEnergy.builder()
+      .setEmsId("ems-with-a-longer-id")
+      .setTimestamp(Instant.parse("2024-05-02T00:00:00Z"))
+      .setFlexibilityArray(new double[] {1, 2, 3, 4})
+      .setEstimateArray(new double[] {5, 6, 7, 8})
+      .build();
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("energy.snapshot");
+
+    long before = System.currentTimeMillis();
+    assertThat(EnergySnapshotFile.write(path, ImmutableList.of(SHORT, LONG)), is(2));
+    long after = System.currentTimeMillis();
+
+    EnergySnapshotFile.Snapshot snapshot = EnergySnapshotFile.read(path);
+    assertThat(snapshot.energies(), is(ImmutableList.of(SHORT, LONG)));
+    assertThat(snapshot.savedAt(), greaterThanOrEqualTo(before));
+    assertThat(snapshot.savedAt(), lessThanOrEqualTo(after));
+  }
+
+  @Test
+  public void testMissingFile() throws IOException {
+    EnergySnapshotFile.Snapshot snapshot = EnergySnapshotFile.read(folder.getRoot().toPath().resolve("none"));
+    assertThat(snapshot.energies(), is(empty()));
+    assertThat(snapshot.savedAt(), is(0L));
+  }
+
+  @Test(expected = IOException.class)
+  public void testCorruptRecord() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("energy.snapshot");
+    EnergySnapshotFile.write(path, ImmutableList.of(SHORT, LONG));
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {0x7f}), channel.size() - 1);
+    }
+    EnergySnapshotFile.read(path);
+  }
+}
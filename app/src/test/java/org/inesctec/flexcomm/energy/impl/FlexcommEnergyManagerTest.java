@@ -0,0 +1,231 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.inesctec.flexcomm.energy.api.FlexcommEnergyEvent.Type.ENERGY_BATCH_UPDATED;
+import static org.inesctec.flexcomm.energy.api.FlexcommEnergyEvent.Type.ENERGY_PERIOD_CHANGED;
+import static org.inesctec.flexcomm.energy.api.FlexcommEnergyEvent.Type.ENERGY_UPDATED;
+
+import java.lang.reflect.Field;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.FlexcommEnergyEvent;
+import org.inesctec.flexcomm.energy.api.FlexcommEnergyProvider;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.metrics.MetricsManager;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.event.Event;
+import org.onosproject.event.EventDeliveryService;
+import org.onosproject.event.EventSink;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.provider.AbstractListenerProviderRegistry;
+import org.onosproject.net.provider.AbstractProvider;
+import org.onosproject.net.provider.ProviderId;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests of the energy manager.
+ */
+public class FlexcommEnergyManagerTest {
+
+  private static final String EMS_ID = "ems-1";
+  private static final Instant DAY = Instant.parse("2024-05-01T00:00:00Z");
+
+  private FlexcommEnergyManager manager;
+  private TestFlexcommEnergyStore store;
+  private TestProvider provider;
+
+  private TestEventDispatcher events;
+
+  @Before
+  public void setUp() throws ReflectiveOperationException {
+    store = new TestFlexcommEnergyStore();
+    events = new TestEventDispatcher();
+    manager = new FlexcommEnergyManager();
+    manager.store = store;
+    manager.configService = createNiceMock(ComponentConfigService.class);
+    manager.deviceService = createNiceMock(DeviceService.class);
+    expect(manager.deviceService.getDevices()).andReturn(ImmutableList.of()).anyTimes();
+    replay(manager.configService, manager.deviceService);
+    manager.metricsService = new MetricsManager();
+    injectEventDispatcher(manager, events);
+    manager.activate(null);
+
+    provider = new TestProvider();
+    manager.register(provider);
+  }
+
+  // The dispatcher field is protected in another package, set it as ONOS's test tools do
+  private static void injectEventDispatcher(Object manager, EventDeliveryService dispatcher)
+      throws ReflectiveOperationException {
+    Field field = AbstractListenerProviderRegistry.class.getDeclaredField("eventDispatcher");
+    field.setAccessible(true);
+    field.set(manager, dispatcher);
+  }
+
+  @After
+  public void tearDown() {
+    manager.unregister(provider);
+    manager.deactivate();
+  }
+
+  private static Energy energy(Instant timestamp, double value) {
+    return DefaultEnergy.builder()
+        .setEmsId(EMS_ID)
+        .setTimestamp(timestamp)
+        .setFlexibilityArray(new double[] {value})
+        .setEstimateArray(new double[] {value})
+        .build();
+  }
+
+  @Test
+  public void testDayServedFromStoredHistory() {
+    Energy stored = energy(DAY, 1);
+    store.putHistory(stored);
+
+    assertThat(manager.getEnergy(EMS_ID, DAY.plusSeconds(3600)), is(stored));
+    assertThat(provider.requests.size(), is(0));
+  }
+
+  @Test
+  public void testDayServedFromCurrentEnergy() {
+    Energy current = energy(DAY, 2);
+    store.updateEnergy(EMS_ID, current);
+
+    assertThat(manager.getEnergy(EMS_ID, DAY), is(current));
+    assertThat(provider.requests.size(), is(0));
+  }
+
+  @Test
+  public void testMissingDayFallsBackToProvider() {
+    store.updateEnergy(EMS_ID, energy(DAY, 2));
+    Instant previousDay = DAY.minusSeconds(86400);
+    provider.response = energy(previousDay, 3);
+
+    assertThat(manager.getEnergy(EMS_ID, previousDay), is(provider.response));
+    assertThat(provider.requests, is(Lists.newArrayList(previousDay)));
+  }
+
+  @Test
+  public void testUnknownDay() {
+    assertThat(manager.getEnergy(EMS_ID, DAY), is(nullValue()));
+    assertThat(provider.requests.size(), is(1));
+  }
+
+  // A full day of slots, so the current slot has a value
+  private static Energy today(String emsId, double value) {
+    double[] values = new double[EnergyPeriodSnapshot.SLOTS_PER_DAY];
+    Arrays.fill(values, value);
+    return DefaultEnergy.builder()
+        .setEmsId(emsId)
+        .setTimestamp(Instant.now().truncatedTo(ChronoUnit.DAYS))
+        .setFlexibilityArray(values)
+        .setEstimateArray(values)
+        .build();
+  }
+
+  private List<String> periodChanges() {
+    return events.posted.stream()
+        .filter(event -> event.type() == ENERGY_PERIOD_CHANGED)
+        .map(event -> event.subject().emsId())
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void testBatchUpdatePostsChangedPeriods() {
+    store.updateEnergy(ImmutableMap.of("ems-a", today("ems-a", 1), "ems-b", today("ems-b", 2)));
+    store.post(new FlexcommEnergyEvent(ENERGY_BATCH_UPDATED, ImmutableSet.of("ems-a", "ems-b")));
+
+    assertThat(events.posted.get(0).type(), is(ENERGY_BATCH_UPDATED));
+    assertThat(ImmutableSet.copyOf(periodChanges()), is(ImmutableSet.of("ems-a", "ems-b")));
+    assertThat(manager.getCurrentEnergyPeriod("ems-b").flexibility(), is(2.0));
+
+    // Only ems-b changes value, ems-a is refreshed with the same data
+    events.posted.clear();
+    store.updateEnergy(ImmutableMap.of("ems-a", today("ems-a", 1), "ems-b", today("ems-b", 3)));
+    store.post(new FlexcommEnergyEvent(ENERGY_BATCH_UPDATED, ImmutableSet.of("ems-a", "ems-b")));
+
+    assertThat(periodChanges(), is(ImmutableList.of("ems-b")));
+    assertThat(manager.getCurrentEnergyPeriod("ems-b").flexibility(), is(3.0));
+  }
+
+  @Test
+  public void testSingleUpdatePostsChangedPeriod() {
+    Energy energy = today("ems-a", 1);
+    store.updateEnergy("ems-a", energy);
+    store.post(new FlexcommEnergyEvent(ENERGY_UPDATED, energy));
+    store.post(new FlexcommEnergyEvent(ENERGY_UPDATED, energy));
+
+    assertThat(periodChanges(), is(ImmutableList.of("ems-a")));
+  }
+
+  private static class TestEventDispatcher implements EventDeliveryService {
+
+    private final List<FlexcommEnergyEvent> posted = Lists.newArrayList();
+
+    @Override
+    public void post(Event event) {
+      posted.add((FlexcommEnergyEvent) event);
+    }
+
+    @Override
+    public <E extends Event> void addSink(Class<E> eventClass, EventSink<E> sink) {
+    }
+
+    @Override
+    public <E extends Event> void removeSink(Class<E> eventClass) {
+    }
+
+    @Override
+    public <E extends Event> EventSink<E> getSink(Class<E> eventClass) {
+      return null;
+    }
+
+    @Override
+    public Set<Class<? extends Event>> getSinks() {
+      return ImmutableSet.of();
+    }
+
+    @Override
+    public void setDispatchTimeLimit(long millis) {
+    }
+
+    @Override
+    public long getDispatchTimeLimit() {
+      return 0;
+    }
+  }
+
+  private static class TestProvider extends AbstractProvider implements FlexcommEnergyProvider {
+
+    private final List<Instant> requests = Lists.newArrayList();
+    private Energy response;
+
+    TestProvider() {
+      super(new ProviderId("flexcomm", "org.inesctec.flexcomm.energy.test"));
+    }
+
+    @Override
+    public Energy performTimestampRequest(String emsId, Instant timestamp) {
+      requests.add(timestamp);
+      return response;
+    }
+  }
+}
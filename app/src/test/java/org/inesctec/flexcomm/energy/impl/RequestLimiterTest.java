@@ -0,0 +1,85 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests of the request limiter.
+ */
+public class RequestLimiterTest {
+
+  private final RequestLimiter limiter = new RequestLimiter(1);
+
+  @Test
+  public void testQueuesOverBound() {
+    CompletableFuture<String> first = new CompletableFuture<>();
+    CompletableFuture<String> firstResult = limiter.submit(() -> first);
+    CompletableFuture<String> secondResult = limiter.submit(() -> CompletableFuture.completedFuture("second"));
+
+    assertThat(limiter.inFlight(), is(1));
+    assertThat(limiter.pending(), is(1));
+    assertThat(secondResult.isDone(), is(false));
+
+    first.complete("first");
+    assertThat(firstResult.join(), is("first"));
+    assertThat(secondResult.join(), is("second"));
+    assertThat(limiter.inFlight(), is(0));
+    assertThat(limiter.pending(), is(0));
+  }
+
+  @Test
+  public void testFailurePropagates() {
+    CompletableFuture<String> result = limiter.submit(() -> {
+      throw new IllegalStateException("boom");
+    });
+
+    assertThat(result.isCompletedExceptionally(), is(true));
+    assertThat(limiter.inFlight(), is(0));
+  }
+
+  @Test
+  public void testCancelledWhileQueuedNeverStarts() {
+    CompletableFuture<String> first = new CompletableFuture<>();
+    limiter.submit(() -> first);
+    AtomicInteger started = new AtomicInteger();
+    CompletableFuture<String> cancelled = limiter.submit(() -> {
+      started.incrementAndGet();
+      return CompletableFuture.completedFuture("cancelled");
+    });
+    CompletableFuture<String> third = limiter.submit(() -> CompletableFuture.completedFuture("third"));
+
+    cancelled.cancel(false);
+    first.complete("first");
+
+    assertThat(started.get(), is(0));
+    assertThat(third.join(), is("third"));
+    assertThat(limiter.inFlight(), is(0));
+    assertThat(limiter.pending(), is(0));
+  }
+
+  @Test
+  public void testCancelPending() {
+    CompletableFuture<String> first = new CompletableFuture<>();
+    CompletableFuture<String> firstResult = limiter.submit(() -> first);
+    AtomicInteger started = new AtomicInteger();
+    CompletableFuture<String> second = limiter.submit(() -> {
+      started.incrementAndGet();
+      return CompletableFuture.completedFuture("second");
+    });
+
+    assertThat(limiter.cancelPending(), is(1));
+    assertThat(second.isCancelled(), is(true));
+    assertThat(limiter.pending(), is(0));
+
+    // The running task is left to complete
+    first.complete("first");
+    assertThat(firstResult.join(), is("first"));
+    assertThat(started.get(), is(0));
+    assertThat(limiter.inFlight(), is(0));
+  }
+}
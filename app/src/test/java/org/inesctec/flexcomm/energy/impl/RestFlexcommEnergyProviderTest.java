@@ -0,0 +1,426 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyPoll;
+import org.inesctec.flexcomm.energy.api.FlexcommEnergyProvider;
+import org.inesctec.flexcomm.energy.api.FlexcommEnergyProviderRegistry;
+import org.inesctec.flexcomm.energy.api.FlexcommEnergyProviderService;
+import org.inesctec.flexcomm.energy.api.FlexcommEnergyService;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.metrics.MetricsManager;
+import org.onlab.packet.ChassisId;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.net.DefaultAnnotations;
+import org.onosproject.net.DefaultDevice;
+import org.onosproject.net.Device;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceService;
+import org.onosproject.net.intent.WorkPartitionEvent;
+import org.onosproject.net.intent.WorkPartitionEventListener;
+import org.onosproject.net.intent.WorkPartitionService;
+import org.onosproject.net.provider.ProviderId;
+import org.osgi.service.component.ComponentContext;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the provider against an upstream served in process.
+ */
+public class RestFlexcommEnergyProviderTest {
+
+  private static final ProviderId PID = new ProviderId("of", "foo");
+  private static final DateTimeFormatter RESPONSE_DAY = DateTimeFormatter.ofPattern("dd/MM/yyyy hh:mm a",
+      Locale.ENGLISH).withZone(ZoneOffset.UTC);
+  private static final long WAIT_MILLIS = 5000;
+
+  private HttpServer server;
+  private RestFlexcommEnergyProvider provider;
+
+  // Upstream requests, one emsId list per request
+  private final List<List<String>> requests = new CopyOnWriteArrayList<>();
+  private final Set<String> mine = Sets.newConcurrentHashSet();
+  private final Map<String, Energy> stored = new ConcurrentHashMap<>();
+  private final Map<String, Energy> published = new ConcurrentHashMap<>();
+  private final List<Device> devices = new ArrayList<>();
+  private final Capture<WorkPartitionEventListener> partitionListener = EasyMock.newCapture();
+  private final Capture<DeviceListener> deviceListener = EasyMock.newCapture();
+  private final Hashtable<String, Object> properties = new Hashtable<>();
+  // Held while the upstream is meant to hang
+  private final CountDownLatch hang = new CountDownLatch(1);
+  private volatile boolean hanging;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/energy", this::respond);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    properties.put(OsgiPropertyConstants.URI_AUTHORITY, "127.0.0.1:" + server.getAddress().getPort());
+    properties.put(OsgiPropertyConstants.URI_PATH, "energy");
+  }
+
+  @After
+  public void tearDown() {
+    if (provider != null) {
+      provider.deactivate(null);
+    }
+    hang.countDown();
+    server.stop(0);
+  }
+
+  // One message per requested EMS, for the requested day or today
+  private void respond(HttpExchange exchange) throws IOException {
+    List<String> emsIds = new ArrayList<>();
+    Instant day = Instant.now().truncatedTo(ChronoUnit.DAYS);
+    String query = exchange.getRequestURI().getQuery();
+    for (String param : query != null ? query.split("&") : new String[0]) {
+      String[] pair = param.split("=", 2);
+      if (pair[0].equals("emsId")) {
+        emsIds.add(pair[1]);
+      } else if (pair[0].equals("timestamp")) {
+        day = LocalDate.parse(pair[1]).atStartOfDay(ZoneOffset.UTC).toInstant();
+      }
+    }
+    requests.add(emsIds);
+    if (hanging) {
+      try {
+        hang.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    // EMS named bad-* come without a series, notime-* with a malformed timestamp
+    StringBuilder body = new StringBuilder("[");
+    for (String emsId : emsIds) {
+      String timestamp = emsId.startsWith("notime-") ? "yesterday" : RESPONSE_DAY.format(day);
+      String flexibility = emsId.startsWith("bad-") ? "[]" : "[1.0,2.0]";
+      body.append(body.length() > 1 ? "," : "")
+          .append("{\"emsId\":\"").append(emsId).append("\",\"timestamp\":\"").append(timestamp)
+          .append("\",\"flexArrayConsumption\":").append(flexibility).append(",\"flexArrayEstimate\":[3.0,4.0]}");
+    }
+    byte[] bytes = body.append(']').toString().getBytes(UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static Device device(int id, String emsId) {
+    return new DefaultDevice(PID, DeviceId.deviceId("of:" + id), Device.Type.SWITCH, "", "", "", "",
+        new ChassisId(id), DefaultAnnotations.builder().set("emsId", emsId).build());
+  }
+
+  private static Energy today(String emsId) {
+    return energy(emsId, Instant.now().truncatedTo(ChronoUnit.DAYS));
+  }
+
+  private static Energy energy(String emsId, Instant day) {
+    return DefaultEnergy.builder()
+        .setEmsId(emsId)
+        .setTimestamp(day)
+        .setFlexibilityArray(new double[] {1, 2})
+        .setEstimateArray(new double[] {3, 4})
+        .build();
+  }
+
+  private void activate() {
+    provider = new RestFlexcommEnergyProvider();
+    provider.cfgService = createNiceMock(ComponentConfigService.class);
+    provider.metricsService = new MetricsManager();
+
+    provider.deviceService = createNiceMock(DeviceService.class);
+    expect(provider.deviceService.getDevices()).andReturn(ImmutableList.copyOf(devices)).anyTimes();
+    expect(provider.deviceService.getDeviceCount()).andReturn(devices.size()).anyTimes();
+    provider.deviceService.addListener(capture(deviceListener));
+    expectLastCall().anyTimes();
+
+    provider.workPartitionService = createNiceMock(WorkPartitionService.class);
+    expect(provider.workPartitionService.isMine(anyString(), anyObject()))
+        .andAnswer(() -> mine.contains(getCurrentArguments()[0])).anyTimes();
+    provider.workPartitionService.addListener(capture(partitionListener));
+    expectLastCall().anyTimes();
+
+    provider.energyService = createNiceMock(FlexcommEnergyService.class);
+    expect(provider.energyService.getEnergy(anyString()))
+        .andAnswer(() -> stored.get(getCurrentArguments()[0])).anyTimes();
+
+    provider.providerRegistry = createNiceMock(FlexcommEnergyProviderRegistry.class);
+    expect(provider.providerRegistry.register(anyObject())).andReturn(new TestProviderService()).anyTimes();
+
+    ComponentContext context = createNiceMock(ComponentContext.class);
+    expect(context.getProperties()).andReturn(properties).anyTimes();
+
+    replay(provider.cfgService, provider.deviceService, provider.workPartitionService, provider.energyService,
+        provider.providerRegistry, context);
+    provider.activate(context);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new AssertionError("Condition not met in " + WAIT_MILLIS + " ms");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private List<String> polled() {
+    return provider.getPollSchedule().stream().map(EnergyPoll::emsId).sorted().collect(Collectors.toList());
+  }
+
+  private List<String> requested() {
+    return requests.stream().flatMap(List::stream).sorted().collect(Collectors.toList());
+  }
+
+  private long requestsOf(String emsId) {
+    return requests.stream().flatMap(List::stream).filter(emsId::equals).count();
+  }
+
+  @Test
+  public void testDeviceAddedFetchesEnergy() throws InterruptedException {
+    mine.add("ems-1");
+    activate();
+    await(provider::isReady);
+
+    deviceListener.getValue().event(new DeviceEvent(DeviceEvent.Type.DEVICE_ADDED, device(1, "ems-1")));
+    // A second device of the same EMS is not fetched again
+    deviceListener.getValue().event(new DeviceEvent(DeviceEvent.Type.DEVICE_ADDED, device(2, "ems-1")));
+
+    await(() -> published.containsKey("ems-1"));
+    Energy energy = published.get("ems-1");
+    assertThat(energy.timestamp(), is(Instant.now().truncatedTo(ChronoUnit.DAYS)));
+    assertThat(energy.flexibilityArray(), contains(1.0, 2.0));
+    assertThat(energy.estimateArray(), contains(3.0, 4.0));
+    assertThat(requested(), contains("ems-1"));
+  }
+
+  @Test
+  public void testPollsOwnedEmsOnly() throws InterruptedException {
+    devices.add(device(1, "ems-1"));
+    devices.add(device(2, "ems-2"));
+    mine.add("ems-1");
+    activate();
+
+    await(provider::isReady);
+    assertThat(polled(), contains("ems-1"));
+    assertThat(requested(), contains("ems-1"));
+    assertThat(published.keySet(), contains("ems-1"));
+  }
+
+  @Test
+  public void testRebalance() throws InterruptedException {
+    devices.add(device(1, "ems-1"));
+    devices.add(device(2, "ems-2"));
+    mine.add("ems-1");
+    stored.put("ems-1", today("ems-1"));
+    activate();
+    await(provider::isReady);
+
+    mine.clear();
+    mine.add("ems-2");
+    partitionListener.getValue().event(new WorkPartitionEvent(WorkPartitionEvent.Type.LEADER_CHANGED, "ems"));
+
+    await(() -> polled().equals(ImmutableList.of("ems-2")) && published.containsKey("ems-2"));
+    // Acquired EMS are fetched only when nothing has been replicated for them
+    assertThat(requested(), contains("ems-2"));
+  }
+
+  @Test
+  public void testWarmUpFetchesExistingDevices() throws InterruptedException {
+    for (int i = 0; i < 10; ++i) {
+      devices.add(device(i, "ems-" + i));
+      mine.add("ems-" + i);
+    }
+    // Two devices of the same EMS are fetched once
+    devices.add(device(10, "ems-0"));
+    activate();
+
+    await(provider::isReady);
+    assertThat(requested().size(), is(10));
+    assertThat(published.size(), is(10));
+    assertThat(published.get("ems-3"), is(today("ems-3")));
+  }
+
+  @Test
+  public void testWarmUpSkipsRestoredEnergy() throws InterruptedException {
+    devices.add(device(1, "ems-1"));
+    devices.add(device(2, "ems-2"));
+    mine.add("ems-1");
+    mine.add("ems-2");
+    stored.put("ems-1", today("ems-1"));
+    stored.put("ems-2", energy("ems-2", Instant.now().truncatedTo(ChronoUnit.DAYS).minus(1, ChronoUnit.DAYS)));
+    activate();
+
+    await(provider::isReady);
+    // Only energy restored from another day is fetched again
+    assertThat(requested(), contains("ems-2"));
+    assertThat(published.keySet(), contains("ems-2"));
+    assertThat(polled(), contains("ems-1", "ems-2"));
+  }
+
+  @Test
+  public void testReadyWithoutDevices() throws InterruptedException {
+    activate();
+
+    await(provider::isReady);
+    assertThat(requests.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testTimestampRequest() throws InterruptedException {
+    activate();
+    await(provider::isReady);
+    Instant day = Instant.parse("2024-05-01T00:00:00Z");
+
+    assertThat(provider.performTimestampRequest("ems-1", day.plusSeconds(3600)), is(energy("ems-1", day)));
+    assertThat(requested(), contains("ems-1"));
+  }
+
+  @Test
+  public void testTimestampRequestBounded() throws InterruptedException {
+    properties.put(OsgiPropertyConstants.HTTP_CONNECT_TIMEOUT, 100);
+    properties.put(OsgiPropertyConstants.HTTP_READ_TIMEOUT, 1000);
+    properties.put(OsgiPropertyConstants.HTTP_POOL_TIMEOUT, 100);
+    properties.put(OsgiPropertyConstants.MAX_CONCURRENCY, 1);
+    activate();
+    await(provider::isReady);
+    hanging = true;
+
+    // Holds the only slot until its read times out
+    Thread holder = new Thread(() -> provider.performTimestampRequest("ems-0", Instant.now()));
+    holder.start();
+    await(() -> requests.size() == 1);
+
+    // Queued for the whole read timeout, then given up on before its own read times out
+    long start = System.nanoTime();
+    assertThat(provider.performTimestampRequest("ems-1", Instant.now()), is(nullValue()));
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(1800L));
+    holder.join();
+  }
+
+  @Test
+  public void testInvalidEntryInBatch() throws InterruptedException {
+    properties.put(OsgiPropertyConstants.BATCH_SIZE, 3);
+    properties.put(OsgiPropertyConstants.UPDATE_RETRIES_DELAY, 1L);
+    for (String emsId : ImmutableList.of("ems-0", "bad-1", "ems-2")) {
+      devices.add(device(devices.size(), emsId));
+      mine.add(emsId);
+    }
+    activate();
+
+    await(provider::isReady);
+    assertThat(requests.get(0).size(), is(3));
+    assertThat(published.keySet().stream().sorted().collect(Collectors.toList()), contains("ems-0", "ems-2"));
+    // The invalid entry failed on its own and is retried
+    await(() -> requestsOf("bad-1") >= 2);
+    assertThat(published.containsKey("bad-1"), is(false));
+  }
+
+  @Test
+  public void testUnparseableTimestamp() throws InterruptedException {
+    properties.put(OsgiPropertyConstants.UPDATE_RETRIES_DELAY, 1L);
+    mine.add("notime-1");
+    activate();
+    await(provider::isReady);
+
+    deviceListener.getValue().event(new DeviceEvent(DeviceEvent.Type.DEVICE_ADDED, device(1, "notime-1")));
+
+    await(() -> requestsOf("notime-1") >= 2);
+    assertThat(published.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testDeactivateDrainsRequests() throws InterruptedException {
+    properties.put(OsgiPropertyConstants.MAX_CONCURRENCY, 1);
+    for (int i = 0; i < 3; ++i) {
+      devices.add(device(i, "ems-" + i));
+      mine.add("ems-" + i);
+    }
+    hanging = true;
+    activate();
+    await(() -> requests.size() == 1);
+
+    long start = System.nanoTime();
+    provider.deactivate(null);
+    provider = null;
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(WAIT_MILLIS));
+
+    // The queued requests were cancelled, not started
+    Thread.sleep(200);
+    assertThat(requests.size(), is(1));
+    assertThat(published.isEmpty(), is(true));
+  }
+
+  private final class TestProviderService implements FlexcommEnergyProviderService {
+    @Override
+    public void updateEnergy(String emsId, Energy energy) {
+      published.put(emsId, energy);
+    }
+
+    @Override
+    public void updateEnergy(Map<String, Energy> energies) {
+      published.putAll(energies);
+    }
+
+    @Override
+    public void removeEnergy(String emsId) {
+      published.remove(emsId);
+    }
+
+    @Override
+    public FlexcommEnergyProvider provider() {
+      return provider;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyAggregate;
+import org.inesctec.flexcomm.energy.api.FlexcommEnergyEvent;
+import org.inesctec.flexcomm.energy.api.FlexcommEnergyStore;
+import org.inesctec.flexcomm.energy.api.FlexcommEnergyStoreDelegate;
+import org.onosproject.store.AbstractStore;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * In-memory energy store for manager tests, keeping the current energy and
+ * a day history per EMS.
+ */
+class TestFlexcommEnergyStore extends AbstractStore<FlexcommEnergyEvent, FlexcommEnergyStoreDelegate>
+    implements FlexcommEnergyStore {
+
+  private final Map<String, Energy> energyData = Maps.newHashMap();
+  private final Map<EnergyDayKey, Energy> energyHistory = Maps.newHashMap();
+
+  @Override
+  public void updateEnergy(String emsId, Energy energy) {
+    energyData.put(emsId, energy);
+    energyHistory.put(EnergyDayKey.of(emsId, energy.timestamp()), energy);
+  }
+
+  @Override
+  public void updateEnergy(Map<String, Energy> energies) {
+    energies.forEach(this::updateEnergy);
+  }
+
+  /**
+   * Stores a past day without making it the current energy.
+   *
+   * @param energy energy of the day
+   */
+  void putHistory(Energy energy) {
+    energyHistory.put(EnergyDayKey.of(energy.emsId(), energy.timestamp()), energy);
+  }
+
+  /**
+   * Sends an event to the store delegate, as the distributed store does.
+   *
+   * @param event energy event
+   */
+  void post(FlexcommEnergyEvent event) {
+    notifyDelegate(event);
+  }
+
+  @Override
+  public FlexcommEnergyEvent removeEnergy(String emsId) {
+    energyData.remove(emsId);
+    return null;
+  }
+
+  @Override
+  public List<Energy> getEnergy() {
+    return ImmutableList.copyOf(energyData.values());
+  }
+
+  @Override
+  public Energy getEnergy(String emsId) {
+    return energyData.get(emsId);
+  }
+
+  @Override
+  public Energy getEnergy(String emsId, Instant timestamp) {
+    return energyHistory.get(EnergyDayKey.of(emsId, timestamp));
+  }
+
+  @Override
+  public List<Energy> getEnergyHistory(String emsId, Instant from, Instant to) {
+    ImmutableList.Builder<Energy> history = ImmutableList.builder();
+    for (long day = EnergyDayKey.epochDay(from); day <= EnergyDayKey.epochDay(to); ++day) {
+      Energy energy = energyHistory.get(new EnergyDayKey(emsId, day));
+      if (energy != null) {
+        history.add(energy);
+      }
+    }
+    return history.build();
+  }
+
+  @Override
+  public EnergyAggregate getEnergyAggregate() {
+    return EnergyAggregator.aggregate(getEnergy());
+  }
+}
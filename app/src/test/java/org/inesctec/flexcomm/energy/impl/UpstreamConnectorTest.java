@@ -0,0 +1,180 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests of the pooled upstream connector.
+ */
+public class UpstreamConnectorTest {
+
+  private static final String BODY = bodyOf(2000);
+  private static final long TIMEOUT_MILLIS = 200;
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private ExecutorService executor;
+  private UpstreamConnector connector;
+
+  private final CountDownLatch hanging = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private volatile String acceptEncoding;
+  private volatile int compressedSize;
+
+  private static String bodyOf(int count) {
+    StringBuilder body = new StringBuilder("[");
+    for (int i = 0; i < count; ++i) {
+      body.append(i > 0 ? "," : "")
+          .append("{\"emsId\":\"ems-").append(i).append("\",\"flexArrayConsumption\":[1.5,2.5]}");
+    }
+    return body.append(']').toString();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/energy", exchange -> {
+      acceptEncoding = exchange.getRequestHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING);
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+        gzip.write(BODY.getBytes(UTF_8));
+      }
+      compressedSize = compressed.size();
+      exchange.getResponseHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+      exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, "application/json");
+      exchange.sendResponseHeaders(200, compressed.size());
+      try (OutputStream output = exchange.getResponseBody()) {
+        compressed.writeTo(output);
+      }
+    });
+    server.createContext("/plain", exchange -> {
+      byte[] body = BODY.getBytes(UTF_8);
+      exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream output = exchange.getResponseBody()) {
+        output.write(body);
+      }
+    });
+    // Never answers until the test ends
+    server.createContext("/hang", exchange -> {
+      hanging.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.sendResponseHeaders(204, -1);
+      exchange.close();
+    });
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.start();
+
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    if (connector != null) {
+      connector.close();
+    }
+    executor.shutdownNow();
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  private UpstreamConnector connect(int poolSize, int readTimeout, int poolTimeout) {
+    connector = UpstreamConnector.create(executor, poolSize, 30, 1000, readTimeout, poolTimeout, "", "");
+    return connector;
+  }
+
+  private String url(String path) {
+    return "http://localhost:" + server.getAddress().getPort() + path;
+  }
+
+  private static void assertFailsWith(Runnable request, Class<?> cause) {
+    long start = System.nanoTime();
+    try {
+      request.run();
+      fail("The request should have timed out");
+    } catch (ProcessingException e) {
+      assertThat(e.getCause(), instanceOf(cause));
+    }
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(TIMEOUT_MILLIS * 5));
+  }
+
+  @Test
+  public void testPoolKeepsConnections() {
+    connect(2, 5000, 1000);
+
+    connector.client().target(url("/plain")).request().get(String.class);
+    connector.client().target(url("/plain")).request().get(String.class);
+
+    // Both requests reused the one connection returned to the pool
+    PoolStats stats = connector.poolStats();
+    assertThat(stats.getMax(), is(2));
+    assertThat(stats.getLeased(), is(0));
+    assertThat(stats.getAvailable(), is(1));
+  }
+
+  @Test
+  public void testReadTimeout() {
+    connect(2, (int) TIMEOUT_MILLIS, 1000);
+
+    assertFailsWith(() -> connector.client().target(url("/hang")).request().get(), SocketTimeoutException.class);
+  }
+
+  @Test
+  public void testPoolTimeout() throws InterruptedException {
+    connect(1, 5000, (int) TIMEOUT_MILLIS);
+    Future<Response> request = connector.client().target(url("/hang")).request().async().get();
+    assertThat(hanging.await(5, TimeUnit.SECONDS), is(true));
+
+    assertFailsWith(() -> connector.client().target(url("/energy")).request().get(),
+        ConnectionPoolTimeoutException.class);
+    request.cancel(true);
+  }
+
+  @Test
+  public void testCompressedResponse() {
+    connect(2, 5000, 1000);
+
+    String body = connector.client().target(url("/energy")).request().get(String.class);
+
+    assertThat(acceptEncoding, containsString("gzip"));
+    assertThat(acceptEncoding, containsString("deflate"));
+    assertThat(body, is(BODY));
+    assertThat(compressedSize * 4, lessThan(BODY.getBytes(UTF_8).length));
+  }
+}
@@ -0,0 +1,138 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests of the upstream retry and circuit breaker state.
+ */
+public class UpstreamGuardTest {
+
+  private static final String EMS_ID = "ems-1";
+  private static final long OPEN_MILLIS = 200;
+
+  private final UpstreamGuard guard = new UpstreamGuard(100, 1000, 5, 3, OPEN_MILLIS, TimeUnit.MILLISECONDS);
+
+  private long retry() {
+    long delay = guard.reserveRetry(EMS_ID);
+    guard.retryStarted(EMS_ID);
+    return delay;
+  }
+
+  @Test
+  public void testBackoff() {
+    assertThat(retry(), allOf(greaterThanOrEqualTo(50L), lessThanOrEqualTo(100L)));
+    assertThat(retry(), allOf(greaterThanOrEqualTo(100L), lessThanOrEqualTo(200L)));
+    assertThat(retry(), allOf(greaterThanOrEqualTo(200L), lessThanOrEqualTo(400L)));
+    assertThat(retry(), allOf(greaterThanOrEqualTo(400L), lessThanOrEqualTo(800L)));
+    // Capped at the max delay
+    assertThat(retry(), allOf(greaterThanOrEqualTo(500L), lessThanOrEqualTo(1000L)));
+    assertThat(guard.attempts(EMS_ID), is(5));
+
+    assertThat(guard.reserveRetry(EMS_ID), is(UpstreamGuard.RETRY_EXHAUSTED));
+    assertThat(guard.attempts(EMS_ID), is(0));
+    assertThat(guard.pendingRetries(), is(0));
+  }
+
+  @Test
+  public void testOneRetryPending() {
+    guard.reserveRetry(EMS_ID);
+
+    assertThat(guard.reserveRetry(EMS_ID), is(UpstreamGuard.RETRY_PENDING));
+    assertThat(guard.pendingRetries(), is(1));
+    assertThat(guard.attempts(EMS_ID), is(1));
+
+    guard.retryStarted(EMS_ID);
+    assertThat(guard.pendingRetries(), is(0));
+  }
+
+  @Test
+  public void testSuccessResetsAttempts() {
+    retry();
+    retry();
+    guard.emsSucceeded(EMS_ID);
+
+    assertThat(guard.attempts(EMS_ID), is(0));
+    assertThat(retry(), lessThanOrEqualTo(100L));
+  }
+
+  @Test
+  public void testHostCircuit() throws InterruptedException {
+    guard.hostFailed();
+    guard.hostFailed();
+    assertThat(guard.allowHost(), is(true));
+
+    guard.hostFailed();
+    assertThat(guard.hostState(), is(UpstreamGuard.State.OPEN));
+    assertThat(guard.allowHost(), is(false));
+
+    // A single probe after the cool down
+    Thread.sleep(OPEN_MILLIS * 2);
+    assertThat(guard.allowHost(), is(true));
+    assertThat(guard.hostState(), is(UpstreamGuard.State.HALF_OPEN));
+    assertThat(guard.allowHost(), is(false));
+
+    // A failed probe opens it again at once
+    guard.hostFailed();
+    assertThat(guard.hostState(), is(UpstreamGuard.State.OPEN));
+    assertThat(guard.allowHost(), is(false));
+
+    Thread.sleep(OPEN_MILLIS * 2);
+    assertThat(guard.allowHost(), is(true));
+    guard.hostSucceeded();
+    assertThat(guard.hostState(), is(UpstreamGuard.State.CLOSED));
+    assertThat(guard.allowHost(), is(true));
+  }
+
+  @Test
+  public void testEmsCircuit() {
+    assertThat(guard.allowEms(EMS_ID), is(true));
+    for (int i = 0; i < 3; ++i) {
+      guard.emsFailed(EMS_ID);
+    }
+    guard.emsFailed("ems-2");
+
+    assertThat(guard.allowEms(EMS_ID), is(false));
+    assertThat(guard.allowEms("ems-2"), is(true));
+    assertThat(guard.openCircuits(), is(1));
+    // The host is unaffected
+    assertThat(guard.allowHost(), is(true));
+
+    guard.emsSucceeded(EMS_ID);
+    assertThat(guard.allowEms(EMS_ID), is(true));
+    assertThat(guard.openCircuits(), is(0));
+  }
+
+  @Test
+  public void testForget() {
+    for (int i = 0; i < 3; ++i) {
+      guard.emsFailed(EMS_ID);
+    }
+    guard.reserveRetry(EMS_ID);
+    guard.forget(EMS_ID);
+
+    assertThat(guard.allowEms(EMS_ID), is(true));
+    assertThat(guard.attempts(EMS_ID), is(0));
+    assertThat(guard.pendingRetries(), is(0));
+  }
+
+  @Test
+  public void testClear() {
+    for (int i = 0; i < 3; ++i) {
+      guard.hostFailed();
+      guard.emsFailed(EMS_ID);
+    }
+    guard.clear();
+
+    assertThat(guard.allowHost(), is(true));
+    assertThat(guard.allowEms(EMS_ID), is(true));
+    assertThat(guard.openCircuits(), is(0));
+  }
+}
@@ -0,0 +1,103 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.time.Instant;
+
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.junit.Test;
+
+/**
+ * Tests of the upstream response validators.
+ */
+public class UpstreamValidatorsTest {
+
+  private static final String KEY = "ems-1";
+  private static final String ETAG = "\"v1\"";
+  private static final String LAST_MODIFIED = "Wed, 01 May 2024 00:00:00 GMT";
+  private static final byte[] BODY = "[{\"emsId\":\"ems-1\"}]".getBytes(UTF_8);
+
+  private final UpstreamValidators validators = new UpstreamValidators();
+
+  private static Response response(String etag, String lastModified) {
+    return Response.ok()
+        .header(HttpHeaders.ETAG, etag)
+        .header(HttpHeaders.LAST_MODIFIED, lastModified)
+        .build();
+  }
+
+  @Test
+  public void testConditions() {
+    validators.update(KEY, response(ETAG, LAST_MODIFIED), BODY);
+
+    Invocation.Builder request = createMock(Invocation.Builder.class);
+    expect(request.header(HttpHeaders.IF_NONE_MATCH, ETAG)).andReturn(request);
+    expect(request.header(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED)).andReturn(request);
+    replay(request);
+
+    validators.addConditions(KEY, request);
+    verify(request);
+  }
+
+  @Test
+  public void testNoConditions() {
+    // Unknown keys and servers without validators send plain requests
+    Invocation.Builder request = createMock(Invocation.Builder.class);
+    replay(request);
+    validators.addConditions(KEY, request);
+
+    validators.update(KEY, response(null, null), BODY);
+    validators.addConditions(KEY, request);
+    verify(request);
+  }
+
+  @Test
+  public void testUnchangedBody() {
+    assertThat(validators.isUnchanged(KEY, BODY), is(false));
+    validators.update(KEY, response(null, null), BODY);
+
+    assertThat(validators.isUnchanged(KEY, BODY.clone()), is(true));
+    assertThat(validators.isUnchanged(KEY, "[]".getBytes(UTF_8)), is(false));
+    assertThat(validators.isUnchanged("ems-2", BODY), is(false));
+    assertThat(validators.okResponses(), is(4L));
+    assertThat(validators.unchangedBodies(), is(1L));
+
+    validators.invalidate(KEY);
+    assertThat(validators.isUnchanged(KEY, BODY), is(false));
+  }
+
+  @Test
+  public void testTimestamps() {
+    Instant day = Instant.parse("2024-05-01T00:00:00Z");
+    validators.recordTimestamp(KEY, day);
+    assertThat(validators.timestamp(KEY), is(day));
+
+    validators.recordTimestamp(KEY, null);
+    assertThat(validators.timestamp(KEY), is(nullValue()));
+  }
+
+  @Test
+  public void testForget() {
+    validators.update(KEY, response(ETAG, null), BODY);
+    validators.update("ems-2", response(ETAG, null), BODY);
+    validators.recordTimestamp(KEY, Instant.now());
+    validators.forget(KEY);
+
+    assertThat(validators.timestamp(KEY), is(nullValue()));
+    assertThat(validators.isUnchanged(KEY, BODY), is(false));
+    assertThat(validators.isUnchanged("ems-2", BODY), is(true));
+
+    validators.clear();
+    assertThat(validators.isUnchanged("ems-2", BODY), is(false));
+  }
+}
@@ -0,0 +1,226 @@
+package org.inesctec.flexcomm.energy.rest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.SecurityContext;
+
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.spi.ContainerResponseWriter;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Runs requests through Jersey in memory and checks the payload sizes and
+ * encodings of the responses.
+ */
+public class CompressionInterceptorTest {
+
+  private static final URI BASE = URI.create("http://localhost/");
+
+  private static final String LARGE = largeBody();
+  private static final String SMALL = "{\"energy\":[]}";
+
+  private static final SecurityContext ANONYMOUS = new SecurityContext() {
+    @Override
+    public Principal getUserPrincipal() {
+      return null;
+    }
+
+    @Override
+    public boolean isUserInRole(String role) {
+      return false;
+    }
+
+    @Override
+    public boolean isSecure() {
+      return false;
+    }
+
+    @Override
+    public String getAuthenticationScheme() {
+      return null;
+    }
+  };
+
+  private ApplicationHandler handler;
+
+  @Path("")
+  public static class TestResource {
+    @GET
+    @Path("large")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String large() {
+      return LARGE;
+    }
+
+    @GET
+    @Path("small")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String small() {
+      return SMALL;
+    }
+  }
+
+  // Repetitive like a real energy listing
+  private static String largeBody() {
+    StringBuilder body = new StringBuilder("{\"energy\":[");
+    for (int i = 0; i < 500; ++i) {
+      body.append(i > 0 ? "," : "")
+          .append("{\"emsId\":\"ems-").append(i).append("\",\"timestamp\":\"2024-05-01T00:00:00Z\",")
+          .append("\"flexibility\":[").append(i % 97).append(".125,12.5,13.75],")
+          .append("\"estimate\":[").append(i % 89).append(".5,1.0,2.0]}");
+    }
+    return body.append("]}").toString();
+  }
+
+  @Before
+  public void setUp() {
+    handler = application(null);
+  }
+
+  private static ApplicationHandler application(Integer threshold) {
+    ResourceConfig config = new ResourceConfig(TestResource.class, CompressionInterceptor.class);
+    if (threshold != null) {
+      config.property(CompressionInterceptor.THRESHOLD_PROPERTY, threshold.toString());
+    }
+    return new ApplicationHandler(config);
+  }
+
+  private static Result get(ApplicationHandler handler, String path, String acceptEncoding) {
+    ContainerRequest request = new ContainerRequest(BASE, BASE.resolve(path), "GET", ANONYMOUS,
+        new MapPropertiesDelegate());
+    if (acceptEncoding != null) {
+      request.header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+    }
+    Result result = new Result();
+    request.setWriter(result);
+    handler.handle(request);
+    return result;
+  }
+
+  @Test
+  public void testGzip() throws Exception {
+    Result result = get(handler, "large", "gzip, deflate");
+
+    assertThat(result.response.getHeaderString(HttpHeaders.CONTENT_ENCODING), is("gzip"));
+    assertThat(result.response.getHeaderString(HttpHeaders.VARY), is(HttpHeaders.ACCEPT_ENCODING));
+    assertThat(result.decoded(new GZIPInputStream(result.input())), is(LARGE));
+    // The listing is repetitive, it has to shrink well below a quarter
+    assertThat(result.body.size() * 4, lessThan(LARGE.getBytes(UTF_8).length));
+  }
+
+  @Test
+  public void testDeflate() throws Exception {
+    Result result = get(handler, "large", "deflate");
+
+    assertThat(result.response.getHeaderString(HttpHeaders.CONTENT_ENCODING), is("deflate"));
+    assertThat(result.decoded(new InflaterInputStream(result.input())), is(LARGE));
+    assertThat(result.body.size() * 4, lessThan(LARGE.getBytes(UTF_8).length));
+  }
+
+  @Test
+  public void testNoAcceptEncoding() throws Exception {
+    Result result = get(handler, "large", null);
+
+    assertThat(result.response.getHeaderString(HttpHeaders.CONTENT_ENCODING), is(nullValue()));
+    assertThat(result.body.toString(UTF_8.name()), is(LARGE));
+  }
+
+  @Test
+  public void testRefusedEncoding() throws Exception {
+    Result result = get(handler, "large", "gzip;q=0, identity");
+
+    assertThat(result.response.getHeaderString(HttpHeaders.CONTENT_ENCODING), is(nullValue()));
+    assertThat(result.body.toString(UTF_8.name()), is(LARGE));
+
+    result = get(handler, "large", "gzip;q=0, deflate;q=0.5");
+    assertThat(result.response.getHeaderString(HttpHeaders.CONTENT_ENCODING), is("deflate"));
+  }
+
+  @Test
+  public void testBelowThreshold() throws Exception {
+    Result result = get(handler, "small", "gzip");
+
+    assertThat(result.response.getHeaderString(HttpHeaders.CONTENT_ENCODING), is(nullValue()));
+    assertThat(result.body.toString(UTF_8.name()), is(SMALL));
+  }
+
+  @Test
+  public void testConfiguredThreshold() throws Exception {
+    Result result = get(application(0), "small", "gzip");
+    assertThat(result.response.getHeaderString(HttpHeaders.CONTENT_ENCODING), is("gzip"));
+    assertThat(result.decoded(new GZIPInputStream(result.input())), is(SMALL));
+
+    result = get(application(-1), "large", "gzip");
+    assertThat(result.response.getHeaderString(HttpHeaders.CONTENT_ENCODING), is(nullValue()));
+    assertThat(result.body.toString(UTF_8.name()), is(LARGE));
+  }
+
+  private static final class Result implements ContainerResponseWriter {
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private ContainerResponse response;
+
+    InputStream input() {
+      return new ByteArrayInputStream(body.toByteArray());
+    }
+
+    String decoded(InputStream input) throws IOException {
+      return new String(ByteStreams.toByteArray(input), UTF_8);
+    }
+
+    @Override
+    public OutputStream writeResponseStatusAndHeaders(long contentLength, ContainerResponse response) {
+      this.response = response;
+      return body;
+    }
+
+    @Override
+    public boolean suspend(long timeOut, TimeUnit timeUnit, TimeoutHandler timeoutHandler) {
+      return false;
+    }
+
+    @Override
+    public void setSuspendTimeout(long timeOut, TimeUnit timeUnit) {
+    }
+
+    @Override
+    public void commit() {
+    }
+
+    @Override
+    public void failure(Throwable error) {
+      throw new AssertionError(error);
+    }
+
+    @Override
+    public boolean enableResponseBuffering() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package org.inesctec.flexcomm.energy.rest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyAggregate;
+import org.inesctec.flexcomm.energy.api.EnergyPeriod;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergyAggregate;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergyPeriod;
+import org.junit.Test;
+import org.onosproject.codec.CodecContext;
+import org.onosproject.codec.JsonCodec;
+import org.onosproject.codec.impl.AnnotationsCodec;
+import org.onosproject.net.Annotations;
+import org.onosproject.net.DefaultAnnotations;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Checks the streamed JSON is byte for byte what the tree codecs produce.
+ */
+public class EnergyJsonWriterTest {
+
+  private static final int EMS_COUNT = 10000;
+  private static final int SLOTS = 96;
+  private static final Instant DAY = Instant.parse("2024-05-01T00:00:00Z");
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final CodecContext context = new TestCodecContext();
+
+  @FunctionalInterface
+  private interface Writer<T> {
+    void write(JsonGenerator generator, T entry) throws IOException;
+  }
+
+  // Same envelope as the resource: {"<field>": [entries...]}
+  private <T> byte[] streamed(String field, List<T> entries, Writer<T> writer) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (JsonGenerator generator = mapper.getFactory().createGenerator(output)) {
+      generator.writeStartObject();
+      generator.writeArrayFieldStart(field);
+      for (T entry : entries) {
+        writer.write(generator, entry);
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+    }
+    return output.toByteArray();
+  }
+
+  private <T> byte[] tree(String field, List<T> entries, JsonCodec<T> codec) throws IOException {
+    ObjectNode root = mapper.createObjectNode();
+    ArrayNode array = root.putArray(field);
+    entries.forEach(entry -> array.add(codec.encode(entry, context)));
+    return mapper.writeValueAsBytes(root);
+  }
+
+  private static Annotations annotations(int i) {
+    return i % 3 == 0
+        ? DefaultAnnotations.builder().set("site", "site-" + i).set("unit", "kW").build()
+        : DefaultAnnotations.EMPTY;
+  }
+
+  private static double value(Random random) {
+    return random.nextInt(50) == 0 ? Double.NaN : Math.round(random.nextDouble() * 250000) / 1000.0;
+  }
+
+  private static List<Energy> energies() {
+    Random random = new Random(42);
+    List<Energy> energies = new ArrayList<>(EMS_COUNT);
+    for (int i = 0; i < EMS_COUNT; ++i) {
+      double[] flexibility = new double[SLOTS];
+      double[] estimate = new double[SLOTS];
+      for (int slot = 0; slot < SLOTS; ++slot) {
+        flexibility[slot] = value(random);
+        estimate[slot] = value(random);
+      }
+      energies.add(DefaultEnergy.builder()
+          .setEmsId(String.format("ems-%05d", i))
+          .setTimestamp(DAY)
+          .setFlexibilityArray(flexibility)
+          .setEstimateArray(estimate)
+          .setAnnotations(annotations(i))
+          .build());
+    }
+    return energies;
+  }
+
+  @Test
+  public void testEnergy() throws IOException {
+    List<Energy> energies = energies();
+
+    assertThat(streamed("energy", energies, EnergyJsonWriter::writeEnergy),
+        is(tree("energy", energies, new EnergyCodec())));
+  }
+
+  @Test
+  public void testEnergyPeriod() throws IOException {
+    Random random = new Random(42);
+    List<EnergyPeriod> periods = new ArrayList<>(EMS_COUNT);
+    for (int i = 0; i < EMS_COUNT; ++i) {
+      periods.add(DefaultEnergyPeriod.builder()
+          .setEmsId(String.format("ems-%05d", i))
+          .setTimestamp(DAY.plusSeconds(900L * (i % SLOTS)))
+          .setFlexibility(value(random))
+          .setEstimate(value(random))
+          .setAnnotations(annotations(i))
+          .build());
+    }
+
+    assertThat(streamed("periods", periods, EnergyJsonWriter::writeEnergyPeriod),
+        is(tree("periods", periods, new EnergyPeriodCodec())));
+  }
+
+  @Test
+  public void testEnergyAggregate() throws IOException {
+    Random random = new Random(42);
+    int[] count = new int[SLOTS];
+    double[][] series = new double[6][SLOTS];
+    for (int slot = 0; slot < SLOTS; ++slot) {
+      // Empty slots have no min and max
+      count[slot] = slot % 10 == 0 ? 0 : random.nextInt(EMS_COUNT);
+      for (double[] values : series) {
+        values[slot] = value(random);
+      }
+    }
+    List<EnergyAggregate> aggregates = new ArrayList<>();
+    aggregates.add(new DefaultEnergyAggregate(count, series[0], series[1], series[2], series[3], series[4],
+        series[5]));
+    aggregates.add(DefaultEnergyAggregate.EMPTY);
+
+    assertThat(streamed("aggregate", aggregates, EnergyJsonWriter::writeEnergyAggregate),
+        is(tree("aggregate", aggregates, new EnergyAggregateCodec())));
+  }
+
+  private class TestCodecContext implements CodecContext {
+
+    private final Map<Class<?>, JsonCodec<?>> codecs = ImmutableMap.of(
+        Annotations.class, new AnnotationsCodec(),
+        Energy.class, new EnergyCodec(),
+        EnergyPeriod.class, new EnergyPeriodCodec(),
+        EnergyAggregate.class, new EnergyAggregateCodec());
+
+    @Override
+    public ObjectMapper mapper() {
+      return mapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> JsonCodec<T> codec(Class<T> entityClass) {
+      return (JsonCodec<T>) codecs.get(entityClass);
+    }
+
+    @Override
+    public <T> T getService(Class<T> serviceClass) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
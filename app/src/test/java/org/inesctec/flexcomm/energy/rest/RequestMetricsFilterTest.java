@@ -0,0 +1,166 @@
+package org.inesctec.flexcomm.energy.rest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.spi.ContainerResponseWriter;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.metrics.MetricsManager;
+
+import com.codahale.metrics.MetricFilter;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Tests of the per endpoint request timers.
+ */
+public class RequestMetricsFilterTest {
+
+  private static final URI BASE = URI.create("http://localhost/");
+
+  private static final SecurityContext ANONYMOUS = new SecurityContext() {
+    @Override
+    public Principal getUserPrincipal() {
+      return null;
+    }
+
+    @Override
+    public boolean isUserInRole(String role) {
+      return false;
+    }
+
+    @Override
+    public boolean isSecure() {
+      return false;
+    }
+
+    @Override
+    public String getAuthenticationScheme() {
+      return null;
+    }
+  };
+
+  private MetricsManager metricsService;
+  private ApplicationHandler handler;
+
+  @Path("")
+  public static class TestResource {
+    @GET
+    @Path("entity")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String entity() {
+      return "{}";
+    }
+
+    @GET
+    @Path("empty")
+    public Response empty() {
+      return Response.noContent().build();
+    }
+
+    public String notAnEndpoint() {
+      return null;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    metricsService = new MetricsManager();
+    RequestMetricsFilter filter = new RequestMetricsFilter(metricsService, TestResource.class);
+    handler = new ApplicationHandler(new ResourceConfig(TestResource.class).register(filter));
+  }
+
+  private void get(String path) {
+    ContainerRequest request = new ContainerRequest(BASE, BASE.resolve(path), "GET", ANONYMOUS,
+        new MapPropertiesDelegate());
+    request.setWriter(new DiscardingWriter());
+    handler.handle(request);
+  }
+
+  private Map<String, Long> counts() {
+    return metricsService.getTimers(MetricFilter.ALL).entrySet().stream()
+        .collect(Collectors.toMap(e -> e.getKey().substring(e.getKey().lastIndexOf('.') + 1),
+            e -> e.getValue().getCount()));
+  }
+
+  @Test
+  public void testTimersRegisteredUpFront() {
+    Map<String, Long> counts = counts();
+
+    assertThat(counts.keySet(), hasItems("entity", "empty"));
+    assertThat(counts.size(), is(2));
+    assertThat(counts.get("entity"), is(0L));
+  }
+
+  @Test
+  public void testTimesEachRequestOnce() {
+    get("entity");
+    get("entity");
+    get("empty");
+
+    Map<String, Long> counts = counts();
+    assertThat(counts.get("entity"), is(2L));
+    assertThat(counts.get("empty"), is(1L));
+  }
+
+  @Test
+  public void testSharesRegisteredTimers() {
+    RequestMetricsFilter filter = new RequestMetricsFilter(metricsService, TestResource.class);
+    handler = new ApplicationHandler(new ResourceConfig(TestResource.class).register(filter));
+    get("empty");
+
+    Map<String, Long> counts = counts();
+    assertThat(counts.size(), is(2));
+    assertThat(counts.get("empty"), is(1L));
+  }
+
+  private static final class DiscardingWriter implements ContainerResponseWriter {
+    @Override
+    public OutputStream writeResponseStatusAndHeaders(long contentLength, ContainerResponse response) {
+      return ByteStreams.nullOutputStream();
+    }
+
+    @Override
+    public boolean suspend(long timeOut, TimeUnit timeUnit, TimeoutHandler timeoutHandler) {
+      return false;
+    }
+
+    @Override
+    public void setSuspendTimeout(long timeOut, TimeUnit timeUnit) {
+    }
+
+    @Override
+    public void commit() {
+    }
+
+    @Override
+    public void failure(Throwable error) {
+      throw new AssertionError(error);
+    }
+
+    @Override
+    public boolean enableResponseBuffering() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package org.inesctec.flexcomm.energy.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, writing the results as JSON unless the command line
+ * asks otherwise.
+ * <p>
+ * Takes the regular JMH options, for example
+ * {@code java -jar target/benchmarks.jar Codec -rff codec.json}.
+ */
+public final class EnergyBenchmarks {
+
+  private static final String DEFAULT_RESULT = "jmh-result.json";
+
+  private EnergyBenchmarks() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cli = new CommandLineOptions(args);
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+    if (!cli.getResultFormat().hasValue()) {
+      options.resultFormat(ResultFormatType.JSON);
+    }
+    if (!cli.getResult().hasValue()) {
+      options.result(DEFAULT_RESULT);
+    }
+    new Runner(options.build()).run();
+  }
+}
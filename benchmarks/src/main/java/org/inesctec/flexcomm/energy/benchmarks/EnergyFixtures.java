@@ -0,0 +1,108 @@
+package org.inesctec.flexcomm.energy.benchmarks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergy;
+
+/**
+ * Deterministic energy data shaped like what the upstream EMS service sends:
+ * one day of 15 minute slots per EMS, values with three decimals.
+ */
+public final class EnergyFixtures {
+
+  public static final int SLOTS_PER_DAY = 96;
+
+  private static final long SEED = 0x5EED;
+
+  private static final DateTimeFormatter UPSTREAM_TIMESTAMP_FORMATTER = DateTimeFormatter
+      .ofPattern("dd/MM/yyyy hh:mm a", Locale.ENGLISH)
+      .withZone(ZoneOffset.UTC);
+
+  private EnergyFixtures() {
+  }
+
+  public static String emsId(int index) {
+    return String.format("ems-%05d", index);
+  }
+
+  public static Instant today() {
+    return Instant.now().truncatedTo(ChronoUnit.DAYS);
+  }
+
+  /**
+   * Builds the energy of a number of EMS for the current day.
+   *
+   * @param count number of EMS
+   * @return energies, one per EMS
+   */
+  public static List<Energy> energies(int count) {
+    Random random = new Random(SEED);
+    Instant today = today();
+    List<Energy> energies = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      energies.add(DefaultEnergy.builder()
+          .setEmsId(emsId(i))
+          .setTimestamp(today)
+          .setFlexibilityArray(series(random))
+          .setEstimateArray(series(random))
+          .build());
+    }
+    return energies;
+  }
+
+  /**
+   * Builds an upstream response body for a number of EMS.
+   *
+   * @param count number of EMS
+   * @return JSON body
+   */
+  public static byte[] upstreamBody(int count) {
+    Random random = new Random(SEED);
+    String timestamp = UPSTREAM_TIMESTAMP_FORMATTER.format(today());
+    StringBuilder body = new StringBuilder(count * 2048);
+    body.append('[');
+    for (int i = 0; i < count; ++i) {
+      if (i > 0) {
+        body.append(',');
+      }
+      body.append("{\"timestamp\":\"").append(timestamp)
+          .append("\",\"emsId\":\"").append(emsId(i))
+          .append("\",\"flexArrayConsumption\":");
+      appendSeries(body, series(random));
+      body.append(",\"flexArrayEstimate\":");
+      appendSeries(body, series(random));
+      body.append('}');
+    }
+    body.append(']');
+    return body.toString().getBytes(UTF_8);
+  }
+
+  private static double[] series(Random random) {
+    double[] values = new double[SLOTS_PER_DAY];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = Math.round(random.nextDouble() * 250000) / 1000.0;
+    }
+    return values;
+  }
+
+  private static void appendSeries(StringBuilder body, double[] values) {
+    body.append('[');
+    for (int i = 0; i < values.length; ++i) {
+      if (i > 0) {
+        body.append(',');
+      }
+      body.append(values[i]);
+    }
+    body.append(']');
+  }
+}
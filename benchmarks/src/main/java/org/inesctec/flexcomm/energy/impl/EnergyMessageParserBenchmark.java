@@ -0,0 +1,65 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.inesctec.flexcomm.energy.benchmarks.EnergyFixtures;
+import org.inesctec.flexcomm.energy.impl.objects.EnergyMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Parsing of upstream response bodies with the shared reader, against an
+ * ObjectMapper built per response as the provider used to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnergyMessageParserBenchmark {
+
+  private static final TypeReference<List<EnergyMessage>> MESSAGES = new TypeReference<List<EnergyMessage>>() {
+  };
+
+  @Param({"1", "100", "10000"})
+  public int emsCount;
+
+  private byte[] body;
+  private String timestamp;
+
+  @Setup
+  public void setup() throws IOException {
+    body = EnergyFixtures.upstreamBody(emsCount);
+    timestamp = EnergyMessageParser.parse(body).get(0).getTimestamp();
+  }
+
+  @Benchmark
+  public List<EnergyMessage> sharedReader() throws IOException {
+    return EnergyMessageParser.parse(body);
+  }
+
+  @Benchmark
+  public List<EnergyMessage> mapperPerResponse() throws IOException {
+    return new ObjectMapper().readValue(body, MESSAGES);
+  }
+
+  @Benchmark
+  public Object parseDay() {
+    return EnergyMessageParser.parseDay(timestamp);
+  }
+}
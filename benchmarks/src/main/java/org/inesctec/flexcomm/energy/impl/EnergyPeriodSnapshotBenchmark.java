@@ -0,0 +1,72 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyPeriod;
+import org.inesctec.flexcomm.energy.benchmarks.EnergyFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Current energy period computation, as done by FlexcommEnergyManager: a
+ * full rebuild when the slot rolls over, incremental updates as energy
+ * comes in, and the reads served from the snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnergyPeriodSnapshotBenchmark {
+
+  @Param({"1", "100", "10000"})
+  public int emsCount;
+
+  private List<Energy> energies;
+  private long epochSlot;
+  private EnergyPeriodSnapshot snapshot;
+  private Energy update;
+  private String emsId;
+
+  @Setup
+  public void setup() {
+    energies = EnergyFixtures.energies(emsCount);
+    epochSlot = EnergyPeriodSnapshot.epochSlot(Instant.now());
+    snapshot = EnergyPeriodSnapshot.of(epochSlot, energies);
+    update = energies.get(energies.size() / 2);
+    emsId = update.emsId();
+  }
+
+  @Benchmark
+  public EnergyPeriodSnapshot rebuild() {
+    return EnergyPeriodSnapshot.of(epochSlot, energies);
+  }
+
+  @Benchmark
+  public EnergyPeriodSnapshot updateOne() {
+    return snapshot.with(update);
+  }
+
+  @Benchmark
+  public EnergyPeriod periodOfOne() {
+    return snapshot.period(emsId);
+  }
+
+  @Benchmark
+  public List<EnergyPeriod> allPeriods() {
+    return snapshot.periods();
+  }
+}
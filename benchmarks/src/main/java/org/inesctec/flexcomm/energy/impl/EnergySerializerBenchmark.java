@@ -0,0 +1,74 @@
+package org.inesctec.flexcomm.energy.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.benchmarks.EnergyFixtures;
+import org.onlab.util.KryoNamespace;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Kryo round trips of DefaultEnergy through the namespace the store
+ * replicates energy with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnergySerializerBenchmark {
+
+  private KryoNamespace serializer;
+  private Energy energy;
+  private byte[] serialized;
+
+  /**
+   * Reports the serialized size alongside the timings.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Size {
+    public long serializedBytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      serializedBytes = 0;
+    }
+  }
+
+  @Setup
+  public void setup() {
+    serializer = DistributedFlexcommEnergyStore.SERIALIZER_BUILDER.build();
+    energy = EnergyFixtures.energies(1).get(0);
+    serialized = serializer.serialize(energy);
+  }
+
+  @Benchmark
+  public byte[] serialize(Size size) {
+    byte[] bytes = serializer.serialize(energy);
+    size.serializedBytes = bytes.length;
+    return bytes;
+  }
+
+  @Benchmark
+  public Energy deserialize() {
+    return serializer.deserialize(serialized);
+  }
+
+  @Benchmark
+  public Energy roundTrip() {
+    return serializer.deserialize(serializer.serialize(energy));
+  }
+}
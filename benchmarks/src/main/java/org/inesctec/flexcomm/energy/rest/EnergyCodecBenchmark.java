@@ -0,0 +1,143 @@
+package org.inesctec.flexcomm.energy.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.inesctec.flexcomm.energy.api.Energy;
+import org.inesctec.flexcomm.energy.api.EnergyPeriod;
+import org.inesctec.flexcomm.energy.benchmarks.EnergyFixtures;
+import org.inesctec.flexcomm.energy.impl.objects.DefaultEnergyPeriod;
+import org.onosproject.codec.CodecContext;
+import org.onosproject.codec.JsonCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Encoding of energy and energy period responses, through the tree building
+ * codecs and through the streaming writer used by the REST resource.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnergyCodecBenchmark {
+
+  @Param({"1", "100", "10000"})
+  public int emsCount;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final CodecContext context = new BenchmarkCodecContext(mapper);
+  private final EnergyCodec energyCodec = new EnergyCodec();
+  private final EnergyPeriodCodec periodCodec = new EnergyPeriodCodec();
+
+  private List<Energy> energies;
+  private List<EnergyPeriod> periods;
+
+  @Setup
+  public void setup() {
+    energies = EnergyFixtures.energies(emsCount);
+    ImmutableList.Builder<EnergyPeriod> builder = ImmutableList.builder();
+    for (Energy energy : energies) {
+      builder.add(DefaultEnergyPeriod.builder()
+          .setEmsId(energy.emsId())
+          .setTimestamp(energy.timestamp())
+          .setFlexibility(energy.flexibilityAt(0))
+          .setEstimate(energy.estimateAt(0))
+          .build());
+    }
+    periods = builder.build();
+  }
+
+  @Benchmark
+  public byte[] energyCodec() throws IOException {
+    ObjectNode root = mapper.createObjectNode();
+    ArrayNode entries = root.putArray("energy");
+    for (Energy energy : energies) {
+      entries.add(energyCodec.encode(energy, context));
+    }
+    return mapper.writeValueAsBytes(root);
+  }
+
+  @Benchmark
+  public byte[] energyWriter() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (JsonGenerator generator = mapper.getFactory().createGenerator(output)) {
+      generator.writeStartObject();
+      generator.writeArrayFieldStart("energy");
+      for (Energy energy : energies) {
+        EnergyJsonWriter.writeEnergy(generator, energy);
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+    }
+    return output.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] energyPeriodCodec() throws IOException {
+    ObjectNode root = mapper.createObjectNode();
+    ArrayNode entries = root.putArray("energyPeriod");
+    for (EnergyPeriod period : periods) {
+      entries.add(periodCodec.encode(period, context));
+    }
+    return mapper.writeValueAsBytes(root);
+  }
+
+  @Benchmark
+  public byte[] energyPeriodWriter() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try (JsonGenerator generator = mapper.getFactory().createGenerator(output)) {
+      generator.writeStartObject();
+      generator.writeArrayFieldStart("energyPeriod");
+      for (EnergyPeriod period : periods) {
+        EnergyJsonWriter.writeEnergyPeriod(generator, period);
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+    }
+    return output.toByteArray();
+  }
+
+  // The fixtures carry no annotations, so the codecs never look up another codec
+  private static final class BenchmarkCodecContext implements CodecContext {
+    private final ObjectMapper mapper;
+
+    private BenchmarkCodecContext(ObjectMapper mapper) {
+      this.mapper = mapper;
+    }
+
+    @Override
+    public ObjectMapper mapper() {
+      return mapper;
+    }
+
+    @Override
+    public <T> JsonCodec<T> codec(Class<T> entityClass) {
+      throw new UnsupportedOperationException("No codec for " + entityClass.getName());
+    }
+
+    @Override
+    public <T> T getService(Class<T> serviceClass) {
+      throw new UnsupportedOperationException("No service " + serviceClass.getName());
+    }
+  }
+}